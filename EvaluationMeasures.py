@@ -1,8 +1,35 @@
-from math import log
-import random
+import numpy as np
+import scipy.sparse as sp
+from StructuralSimilarity import call_matrix
 
 
-random.seed(42)
+_call_matrices_cache = None
+
+
+def _call_matrices(classes_info):
+    # the class x class call counts and their log(calls)+1, computed once for every classes_info
+    global _call_matrices_cache
+    if _call_matrices_cache is None or _call_matrices_cache[0] is not classes_info:
+        calls = call_matrix(classes_info)
+        log_calls = calls.copy()
+        log_calls.data = np.log(log_calls.data) + 1
+        _call_matrices_cache = (classes_info, calls, log_calls)
+    return _call_matrices_cache[1], _call_matrices_cache[2]
+
+
+def _membership_matrix(microservices, n_microservices, unassigned=False):
+    # membership[class, microservice] = 1, -1 is left out or, with unassigned, is the last column
+    rows, cols = [], []
+    for class_index, class_microservices in enumerate(microservices):
+        for microservice in class_microservices:
+            if microservice != -1:
+                rows.append(class_index)
+                cols.append(microservice)
+            elif unassigned:
+                rows.append(class_index)
+                cols.append(n_microservices)
+    shape = (len(microservices), max(n_microservices, 0) + unassigned)
+    return sp.csr_matrix((np.ones(len(rows)), (rows, cols)), shape=shape)
 
 
 def _ms_to_clss(microservices, n_microservices):
@@ -63,41 +90,29 @@ def SR(microservices, true_microservices, k):
 
 
 def SM(microservices, classes_info):
+    # classes with -1 among their microservices are left out. a call from a class to a class in several
+    # microservices counts towards the lowest of them, in place of the random one the loop version picked
     K = max(max(m) for m in microservices) + 1  # number of microservices
-    m = [0] * K  # number of classes for each microservice
-    mu = [0] * K  # number of inside calls
-    sigma = [[0]*K for _ in range(K)]  # number of outside calls
-    for class_index, class_name in enumerate(classes_info):
-        class_microservices = microservices[class_index]
-        if -1 in class_microservices:
-            continue
-        for microservice_i in class_microservices:
-            m[microservice_i] += 1
-        for call in classes_info[class_name]["method_calls"]:
-            class_j = call["class_name"]
-            if class_j in classes_info:
-                j = list(classes_info).index(class_j)
-                if class_index == j:
-                    continue
-                if -1 in microservices[j]:
-                    continue
-                for ms in set(class_microservices) - set(microservices[j]):
-                    sigma[ms][random.choice(list(microservices[j]))] += 1
-                for ms in set(class_microservices).intersection(set(microservices[j])):
-                    mu[ms] += 1
-
-    SM1, SM2 = 0, 0
-    for i in range(K):
-        try:
-            SM1 += mu[i] / (m[i] ** 2)
-        except ZeroDivisionError:
-            pass
-        for j in range(K):
-            if i != j:
-                try:
-                    SM2 += (sigma[i][j]+sigma[j][i]) / (2 * m[i] * m[j])
-                except ZeroDivisionError:
-                    pass
+    calls, _ = _call_matrices(classes_info)
+    assigned = [() if -1 in class_microservices else class_microservices for class_microservices in microservices]
+    membership = _membership_matrix(assigned, K)
+    first_classes = [i for i, class_microservices in enumerate(assigned) if class_microservices]
+    first = sp.csr_matrix((np.ones(len(first_classes)), (first_classes, [min(assigned[i]) for i in first_classes])),
+                          shape=membership.shape)
+    m = np.asarray(membership.sum(axis=0)).ravel()  # number of classes for each microservice
+    calls = calls.tocoo()
+    between = calls.row != calls.col
+    call_counts = sp.diags(calls.data[between])
+    caller, callee = membership[calls.row[between]], membership[calls.col[between]]
+    shared = caller.multiply(callee)
+    mu = np.asarray((call_counts @ shared).sum(axis=0)).ravel()  # number of inside calls
+    # number of outside calls, a call from a class in no microservice or to one is not counted
+    sigma = ((call_counts @ (caller - shared)).T @ first[calls.col[between]]).toarray()
+
+    SM1 = np.sum(np.divide(mu, m**2, out=np.zeros(K), where=m != 0))
+    m_pairs = np.outer(m, m)
+    pairs = (m_pairs != 0) & ~np.eye(K, dtype=bool)
+    SM2 = np.sum((sigma + sigma.T)[pairs] / (2 * m_pairs[pairs]))
     if K == 0:
         SM1 = 0
     else:
@@ -106,27 +121,18 @@ def SM(microservices, classes_info):
         SM2 = 0
     else:
         SM2 /= ((K*(K-1))/2)
-    return SM1 - SM2
+    return float(SM1 - SM2)
 
 
 def IFN(microservices, classes_info):
+    # the interfaces of a microservice are the classes called by a class that shares no microservice with them,
+    # -1 included; each one counts once
     num_microservices = max(max(ms) for ms in microservices) + 1
-    interfaces_per_microservice = [set() for _ in range(num_microservices)]
-
-    for class_index, class_name in enumerate(classes_info):
-        class_microservices = microservices[class_index]
-        for call in classes_info[class_name]["method_calls"]:
-            if call['class_name'] in classes_info:
-                call_class_index = list(classes_info).index(call["class_name"])
-                call_microservices = microservices[call_class_index]
-                for call_microservice in call_microservices:
-                    if call_microservice in class_microservices:
-                        break
-                else:
-                    interfaces_per_microservice[call_microservice].add(call['class_name'])
-
-    total_interfaces = sum([len(interfaces)
-                           for interfaces in interfaces_per_microservice])
+    calls, _ = _call_matrices(classes_info)
+    membership = _membership_matrix(microservices, num_microservices, unassigned=True)
+    calls = calls.tocoo()
+    shared = np.asarray(membership[calls.row].multiply(membership[calls.col]).sum(axis=1)).ravel()
+    total_interfaces = len(np.unique(calls.col[shared == 0]))
     try:
         interface_number = total_interfaces / num_microservices
     except ZeroDivisionError:
@@ -147,52 +153,38 @@ def NED(microservices):
         return 1
 
 
-def _icp_num(classes_i, classes_j, classes_info):
-    sum_calls = 0
-    for class_i in classes_i:
-        if class_i in classes_j:
-            continue
-        for class_j in classes_j:
-            if class_j in classes_i:
-                continue
-            calls = len([1 for call in classes_info[class_i]["method_calls"]
-                        if call["class_name"] == class_j])
-            try:
-                sum_calls += log(calls)+1
-            except ValueError:
-                pass  # log domain error is okay to pass
-    return sum_calls
-
-
-def _icp_denom(classes_i, classes_j, classes_info):
-    sum_calls = 0
-    for class_i in classes_i:
-        for class_j in classes_j:
-            calls = len([1 for call in classes_info[class_i]["method_calls"]
-                        if call["class_name"] == class_j])
-            try:
-                sum_calls += log(calls)+1
-            except ValueError:
-                pass  # log domain error is okay to pass
-    return sum_calls
-
-
 def ICP(microservices, classes_info):
-    class_names = list(classes_info)
-    numerator, denominator = 0, 0
-
+    # the log(calls)+1 weights of every pair of classes (a, b) count once for every pair of microservices (i, j)
+    # with a in i and b in j in the denominator, and in the numerator when also a is not in j and b is not in i
     n_microservices = max(max(m) for m in microservices) + 1
-    for microservice_i in range(n_microservices):
-        classes_i = {class_names[class_number] for class_number, microservices_list in enumerate(microservices)
-                     if microservice_i in microservices_list}
-        for microservice_j in range(n_microservices):
-            classes_j = {class_names[class_number] for class_number, microservices_list in enumerate(microservices)
-                        if microservice_j in microservices_list}
-
-            if microservice_i != microservice_j:
-                numerator += _icp_num(classes_i, classes_j, classes_info)
-            denominator += _icp_denom(classes_i, classes_j, classes_info)
+    _, log_calls = _call_matrices(classes_info)
+    membership = _membership_matrix(microservices, n_microservices)
+    n_class_microservices = np.asarray(membership.sum(axis=1)).ravel()
+    denominator = n_class_microservices @ (log_calls @ n_class_microservices)
+    log_calls = log_calls.tocoo()
+    shared = np.asarray(membership[log_calls.row].multiply(membership[log_calls.col]).sum(axis=1)).ravel()
+    numerator = np.sum(log_calls.data * (n_class_microservices[log_calls.row] - shared)
+                       * (n_class_microservices[log_calls.col] - shared))
 
     if numerator == 0:
         return 0
-    return numerator/denominator
+    return float(numerator/denominator)
+
+
+measures = {"Precision": Precision, "SR": SR, "SM": SM, "IFN": IFN, "NED": NED, "ICP": ICP}
+
+
+def evaluate(microservices, evaluation_measures, classes_info, true_microservices=None, k=None):
+    # {measure: value} of every given measure, SR once for every k value as SR@k
+    values = {}
+    for measure in evaluation_measures or []:
+        if measure in ["SM", "IFN", "ICP"]:
+            values[measure] = measures[measure](microservices, classes_info)
+        elif measure == "Precision":
+            values[measure] = measures[measure](microservices, true_microservices)
+        elif measure == "SR":
+            for k_sr in k:
+                values[measure+"@"+str(k_sr)] = measures[measure](microservices, true_microservices, k_sr)
+        else:
+            values[measure] = measures[measure](microservices)
+    return values
@@ -1,10 +1,9 @@
 from HDBSCAN.main import hierarchical_DBSCAN
 from EvaluationMeasures import *
+from JavaExtractor import get_extractor
 from argparse import ArgumentParser
-from os import makedirs, walk, path, pathsep
-from subprocess import run
-from json import load, dump
-import shutil
+from os import walk, path
+from json import dump
 
 
 parser = ArgumentParser(
@@ -55,44 +54,16 @@ measures = {"Precision": Precision, "SR": SR,
 base_dir = path.dirname(path.realpath(__file__))
 
 
-def merge_java_files(src_dir, dest_file):
-    with open(dest_file, 'w') as outfile:
-        for root, dirs, files in walk(src_dir):
-            for filename in files:
-                if filename.endswith('.java'):
-                    filepath = path.join(root, filename)
-                    with open(filepath) as infile:
-                        lines = infile.readlines()
-                        for line in lines:
-                            if not line.startswith('package'):
-                                outfile.write(line)
-                    outfile.write('\n')
-
-
 if args.project_directory:
-    print("merging source files...", end="\t", flush=True)
+    print("scanning microservices...", end="\t", flush=True)
     if args.project_directory.endswith("/"):
         args.project_directory = args.project_directory[:-1]
-    project_dir_name = args.project_directory.split('/')[-1]
     true_ms_dirs = next(walk(args.project_directory))[1]
-    if path.isdir(".data/"):
-        if input("the previous data directory will be deleted; proceed? (Y/n): ") in ["n", "no", "N", "No", "NO"]:
-            print("operation cancelled.")
-            exit()
-        shutil.rmtree(".data/", ignore_errors=True)
-    true_ms_classnames = []
-    libs = path.join(base_dir, "HDBSCAN/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "HDBSCAN/JavaParser/lib/json-20230618.jar")
-    makedirs(path.join(base_dir, f".data/{project_dir_name}"), exist_ok=True)
-    for directory in true_ms_dirs:
-        if directory.endswith("/"):
-            directory = directory[:-1]
-        json_path = path.join(base_dir, f".data/{project_dir_name}/{directory}.json")
-        run(['java', '-cp', libs, path.join(base_dir, 'HDBSCAN/JavaParser/ClassScanner.java'), path.join(args.project_directory, directory), json_path])
-        with open(json_path, "rt") as classes_file:
-            true_ms_classnames.append(load(classes_file)["classes"])
-
-    args.file_path = path.join(base_dir, f".data/{project_dir_name}/OneFileSource.java")
-    merge_java_files(args.project_directory, args.file_path)
+    ms_classnames = get_extractor().scan_roots(args.project_directory)
+    true_ms_classnames = [ms_classnames[directory] for directory in true_ms_dirs]
+
+    # the parser takes the project directory as is and parses its files in parallel
+    args.file_path = args.project_directory
     print("done!")
 
 if args.file_path:
@@ -1,13 +1,79 @@
 '''
 def DBSCAN(minimum_number_of_sample, epsilon, class_similarity_matrix) -> clusters
+def dbscan_layers(minimum_number_of_sample, epsilons, class_similarity_matrix) -> [clusters for every epsilon]
 def visualize_cluster(cluster)
 '''
 
 
 from sklearn.cluster import DBSCAN
+from scipy.sparse import coo_matrix
+from scipy.sparse.csgraph import connected_components
+import numpy as np
 
 
 def dbscan(minimum_number_of_sample, epsilon, class_similarity_matrix):
     clustering = DBSCAN(eps=epsilon, min_samples=minimum_number_of_sample, metric='precomputed').fit(
         class_similarity_matrix)
     return [{_} for _ in clustering.labels_]
+
+
+def _minimum_spanning_tree(weights):
+    # Prim's algorithm on a dense symmetric matrix, zero weights are edges too
+    n = len(weights)
+    in_tree = np.zeros(n, dtype=bool)
+    in_tree[0] = True
+    distance = weights[0].copy()
+    parent = np.zeros(n, dtype=int)
+    rows, cols, edge_weights = [], [], []
+    for _ in range(n-1):
+        j = int(np.argmin(np.where(in_tree, np.inf, distance)))
+        rows.append(parent[j])
+        cols.append(j)
+        edge_weights.append(distance[j])
+        in_tree[j] = True
+        closer = weights[j] < distance
+        distance[closer] = weights[j][closer]
+        parent[closer] = j
+    return np.array(rows, dtype=int), np.array(cols, dtype=int), np.array(edge_weights)
+
+
+def dbscan_layers(minimum_number_of_sample, epsilons, class_similarity_matrix):
+    # the same labels as dbscan() for every epsilon, from one minimum spanning tree instead of one DBSCAN per epsilon.
+    # a class is a core class when its minimum_number_of_sample-th nearest class (itself included) is within epsilon,
+    # and two core classes are in the same cluster when the tree edges within epsilon connect them; the tree is built
+    # on the mutual reachability distance max(core distance i, core distance j, distance i j), so its edges within
+    # epsilon connect only core classes. DBSCAN numbers the clusters by their first core class and gives a border
+    # class the first cluster that reaches it, the cluster with the lowest label among its core neighbors.
+    distances = np.asarray(class_similarity_matrix, dtype=float)
+    n = len(distances)
+    if n == 0:
+        return [[] for _ in epsilons]
+    if minimum_number_of_sample <= n:
+        core_distances = np.partition(distances, minimum_number_of_sample-1, axis=1)[:, minimum_number_of_sample-1]
+    else:
+        core_distances = np.full(n, np.inf)
+    mutual_reachability = np.maximum(distances, np.maximum.outer(core_distances, core_distances))
+    rows, cols, edge_weights = _minimum_spanning_tree(mutual_reachability)
+    del mutual_reachability
+
+    layers = []
+    for epsilon in epsilons:
+        core = core_distances <= epsilon
+        within = edge_weights <= epsilon
+        _, components = connected_components(
+            coo_matrix((np.ones(within.sum()), (rows[within], cols[within])), shape=(n, n)), directed=False)
+        labels = np.full(n, -1)
+        core_indices = np.flatnonzero(core)
+        if len(core_indices):
+            # np.unique returns the index of the first core class of every cluster
+            cluster_components, first_core = np.unique(components[core_indices], return_index=True)
+            component_labels = np.full(n, -1)
+            component_labels[cluster_components[np.argsort(first_core)]] = np.arange(len(cluster_components))
+            labels[core_indices] = component_labels[components[core_indices]]
+            border_indices = np.flatnonzero(~core)
+            if len(border_indices):
+                reached = distances[np.ix_(core_indices, border_indices)] <= epsilon
+                border_labels = np.where(reached, labels[core_indices][:, None], n).min(axis=0)
+                labels[border_indices] = np.where(border_labels < n, border_labels, -1)
+        layers.append([{_} for _ in labels])
+    return layers
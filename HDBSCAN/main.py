@@ -1,37 +1,43 @@
 from nltk import download
-from os import path, pathsep
-from subprocess import run
+from os import path
 from json import load
+from JavaExtractor import get_extractor, cache_dir
 from HDBSCAN.similarity_analysis import class_similarity
-from HDBSCAN.DBSCAN import dbscan
+from HDBSCAN.DBSCAN import dbscan, dbscan_layers
 
 
-def hierarchical_DBSCAN(source_code_path, alpha, minimum_number_of_sample, max_epsilon, one_shot=False):
+def _epsilons(max_epsilon):
+    # 0.01, 0.02, ... up to max_epsilon
+    epsilons = []
+    epsilon = 0.01
+    while epsilon <= max_epsilon:
+        epsilons.append(epsilon)
+        epsilon += 0.01
+        epsilon = round(epsilon, 2)
+    return epsilons
+
+
+def parse(source_code_path):
     # parse the source code and get classes, methods, etc.
     print("\n[hierarchical_DBSCAN] parsing the code...", end=" ", flush=True)
     base_dir = path.dirname(path.realpath(__file__))
-    libs = path.join(base_dir, "JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "JavaParser/lib/json-20230618.jar")
-    json_path = path.join(base_dir, "JavaParser/classes.json")
-    run(['java', '-cp', libs, path.join(base_dir, 'JavaParser/Parser.java'), source_code_path, json_path]) 
+    json_path = path.join(base_dir, "classes.json")
+    # the similarity analysis does not read the class sources
+    get_extractor().parse(source_code_path, json_path, cache_dir=cache_dir,
+                          include_source=False)
     with open(json_path, "rt") as classes_file:
         classes_info = load(classes_file)
     print("done!")
 
-    # finding class names for each method call
-    print("[hierarchical_DBSCAN] analyzing method calls...", end=" ", flush=True)
-    for clss in classes_info:
-        for call in classes_info[clss]["method_calls"]:
-            for other_clss in classes_info:
-                if call["method_name"] in classes_info[other_clss]["methods"]:
-                    call["class_name"] = other_clss
-                    if clss == other_clss:
-                        break
-    print("done!")
-
     # necessary downloads for nltk
     download('punkt')
     download('punkt_tab')
     download('stopwords')
+    return classes_info
+
+
+def hierarchical_DBSCAN(source_code_path, alpha, minimum_number_of_sample, max_epsilon, one_shot=False):
+    classes_info = parse(source_code_path)
 
     # get class similarity metric to feed to DBSCAN
     if isinstance(alpha, list):
@@ -46,19 +52,11 @@ def hierarchical_DBSCAN(source_code_path, alpha, minimum_number_of_sample, max_e
                 if one_shot:
                     ms_dict[alpha_i] = (dbscan(minimum_number_of_sample, max_epsilon, class_similarity_matrix), classes_info)
                 else:
-                    layers = {}
-                    epsilon = 0.01
-                    while epsilon <= max_epsilon:
-                        layer = dbscan(minimum_number_of_sample, epsilon, class_similarity_matrix)
-                        layers[epsilon] = layer
-                        epsilon += 0.01
-                        epsilon = round(epsilon, 2)
+                    epsilons = _epsilons(max_epsilon)
+                    layers = dict(zip(epsilons, dbscan_layers(minimum_number_of_sample, epsilons, class_similarity_matrix)))
                     ms_dict[alpha_i] = (layers, classes_info)
             else:
-                layers = {}
-                for epsilon in max_epsilon:
-                    layer = dbscan(minimum_number_of_sample, epsilon, class_similarity_matrix)
-                    layers[epsilon] = layer
+                layers = dict(zip(max_epsilon, dbscan_layers(minimum_number_of_sample, max_epsilon, class_similarity_matrix)))
                 ms_dict[alpha_i] = (layers, classes_info)
         return ms_dict
 
@@ -71,12 +69,6 @@ def hierarchical_DBSCAN(source_code_path, alpha, minimum_number_of_sample, max_e
         if isinstance(max_epsilon, int) or isinstance(max_epsilon, float):
             if one_shot:
                 return dbscan(minimum_number_of_sample, max_epsilon, class_similarity_matrix), classes_info
-            layers = {}
-            epsilon = 0.01
-            while epsilon <= max_epsilon:
-                layer = dbscan(minimum_number_of_sample, epsilon, class_similarity_matrix)
-                layers[epsilon] = layer
-                epsilon += 0.01
-                epsilon = round(epsilon, 2)
-            return layers, classes_info
-        return [dbscan(minimum_number_of_sample, epsilon, class_similarity_matrix) for epsilon in max_epsilon], classes_info
+            epsilons = _epsilons(max_epsilon)
+            return dict(zip(epsilons, dbscan_layers(minimum_number_of_sample, epsilons, class_similarity_matrix))), classes_info
+        return dbscan_layers(minimum_number_of_sample, max_epsilon, class_similarity_matrix), classes_info
@@ -1,5 +1,4 @@
 '''
-def structural_similarity(ci, cj, classes_info) -> sim_str(ci, cj)
 def semantic_similarity(ci, cj, classes_info) -> sim_sem(ci, cj)
 def class_similarity(alpha, classes_info) -> class_similarity_matrix
 '''
@@ -7,33 +6,9 @@ def class_similarity(alpha, classes_info) -> class_similarity_matrix
 
 from sklearn.feature_extraction.text import TfidfVectorizer
 from sklearn.metrics.pairwise import cosine_similarity
-from numpy import zeros
+from numpy import subtract, triu
 from HDBSCAN.preprocess import preprocess
-
-
-def calls(ci, cj, classes_info):
-    return len([
-        1 for call in classes_info[ci]["method_calls"]
-        if call["class_name"] == cj
-    ])
-
-
-def calls_in(ci, classes_info):
-    return sum(
-        [calls(cj, ci, classes_info) for cj in classes_info])
-
-
-def structural_similarity(ci, cj, classes_info):
-    if calls_in(ci, classes_info) != 0 and calls_in(cj, classes_info) != 0:
-        return (1 / 2) * (
-            calls(ci, cj, classes_info) / calls_in(cj, classes_info) +
-            calls(cj, ci, classes_info) / calls_in(ci, classes_info))
-    elif calls_in(ci, classes_info) == 0 and calls_in(cj, classes_info) != 0:
-        return calls(ci, cj, classes_info) / calls_in(cj, classes_info)
-    elif calls_in(ci, classes_info) != 0 and calls_in(cj, classes_info) == 0:
-        return calls(cj, ci, classes_info) / calls_in(ci, classes_info)
-    else:
-        return 0
+from StructuralSimilarity import structural_similarity
 
 
 def semantic_similarity_vectors(classes_info):
@@ -47,16 +22,20 @@ def semantic_similarity_vectors(classes_info):
     return tf_idf_vectors
 
 
-def class_similarity(alpha, classes_info):
-    class_similarity_matrix = zeros((len(classes_info), len(classes_info)))
-    tf_idf_vectors = semantic_similarity_vectors(classes_info)
-    len_classes_info = len(classes_info)
-    for i in range(len_classes_info):
-        for j in range(i+1,len_classes_info):
-            ci = list(classes_info.keys())[i]
-            cj = list(classes_info.keys())[j]
-            class_similarity_matrix[i][j] = 1 - (alpha*structural_similarity(ci, cj, classes_info) + (1-alpha)*cosine_similarity(tf_idf_vectors[i], tf_idf_vectors[j])[0][0])
-        print(f"\r[similarity_analysis] {int(100*i/len_classes_info):02d}%", end="", flush=True)
-    print(f"\r[similarity_analysis] 100%", flush=True)
+def semantic_similarity(classes_info):
+    # the tf-idf vectors are sparse, their cosine similarities are one sparse product of the normalized rows
+    return cosine_similarity(semantic_similarity_vectors(classes_info))
+
+
+def combined_similarity(alpha, structural_similarity_matrix, semantic_similarity_matrix):
+    # the class distance matrix of precomputed similarity matrices, which are left as they are
+    class_similarity_matrix = structural_similarity_matrix * alpha
+    class_similarity_matrix += (1-alpha)*semantic_similarity_matrix
+    subtract(1, class_similarity_matrix, out=class_similarity_matrix)
+    class_similarity_matrix = triu(class_similarity_matrix, k=1)
 
     return class_similarity_matrix + class_similarity_matrix.T
+
+
+def class_similarity(alpha, classes_info):
+    return combined_similarity(alpha, structural_similarity(classes_info), semantic_similarity(classes_info))
@@ -0,0 +1,100 @@
+from os import getpid, path, pathsep, walk
+from subprocess import Popen, PIPE, run, CalledProcessError
+from json import dumps, loads
+import atexit
+
+
+base_dir = path.dirname(path.realpath(__file__))
+module_dir = path.join(base_dir, "JavaParser")
+jar_path = path.join(module_dir, "build/libs/extractor.jar")
+# the parse cache shared by all pipelines
+cache_dir = path.join(module_dir, ".cache")
+libs = path.join(module_dir, "lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(module_dir, "lib/json-20230618.jar")
+
+
+def _up_to_date(outputs, sources):
+    # the build outputs exist and none of them is older than a source
+    return bool(outputs) and min(map(path.getmtime, outputs)) >= max(map(path.getmtime, sources), default=0)
+
+
+def extractor_command():
+    # java -jar extractor.jar, built with gradle first if it is missing or older than its sources
+    sources = [path.join(root, file) for root, _, files in walk(path.join(module_dir, "src/main/java"))
+               for file in files if file.endswith(".java")]
+    if path.isfile(jar_path) and _up_to_date([jar_path], sources):
+        return ['java', '-jar', jar_path]
+    try:
+        run(['gradle', '--offline', '-q', '-p', module_dir, 'jar'], check=True)
+        return ['java', '-jar', jar_path]
+    except (OSError, CalledProcessError):
+        # no working gradle, compile the sources with javac and run them from the class files, unless the class
+        # files of an earlier start are not older than the sources
+        classes_dir = path.join(module_dir, "build/javac")
+        classes = [path.join(root, file) for root, _, files in walk(classes_dir)
+                   for file in files if file.endswith(".class")]
+        if not _up_to_date(classes, sources):
+            run(['javac', '-encoding', 'UTF-8', '-d', classes_dir, '-cp', libs, *sources], check=True)
+        return ['java', '-cp', classes_dir+pathsep+libs, 'extractor.Extractor']
+
+
+class JavaExtractor:
+    # one long-lived extractor daemon process, requests and responses are JSON lines
+    def __init__(self):
+        self.pid = getpid()
+        self.process = Popen(extractor_command()+['daemon'],
+                             stdin=PIPE, stdout=PIPE, text=True, encoding="utf-8", bufsize=1)
+
+    def request(self, command, **arguments):
+        self.process.stdin.write(dumps({"command": command, **arguments})+"\n")
+        self.process.stdin.flush()
+        line = self.process.stdout.readline()
+        if not line:
+            raise RuntimeError(f"the java extractor exited with code {self.process.wait()}")
+        response = loads(line)
+        if response["status"] != "ok":
+            raise RuntimeError(f"the java extractor failed to {command}: {response['message']}")
+        return response
+
+    def parse(self, source_path, output_path, format="json", cache_dir=None, max_source_length=0, pretty_source=False,
+              include_source=True):
+        # format: "json" (compact object), "jsonl" (one class per line) or "pretty" (indented)
+        # cache_dir: keeps the classes of every parsed file, unchanged files are not parsed again
+        # max_source_length: keeps only the first characters of every class source, 0 keeps all of it
+        # pretty_source: writes the sources through JavaParser's pretty printer instead of as written
+        # include_source: False leaves the "source" field out
+        arguments = {"source": source_path, "output": output_path, "format": format,
+                     "max_source_length": max_source_length, "pretty_source": pretty_source,
+                     "no_source": not include_source}
+        if cache_dir:
+            arguments["cache"] = cache_dir
+        return self.request("parse", **arguments)["classes"]
+
+    def scan(self, directory):
+        return self.request("scan", source=directory)["classes"]
+
+    def scan_roots(self, directory):
+        # {first-level directory name: class names}, all directories are scanned concurrently
+        return self.request("scan", source=directory, roots=True)["classes"]
+
+    def sources(self, source_path, max_source_length=0, pretty_source=False):
+        # {class name: source} of a file or of every file under a directory
+        return self.request("sources", source=source_path, max_source_length=max_source_length,
+                            pretty_source=pretty_source)["classes"]
+
+    def close(self):
+        if self.pid == getpid() and self.process.poll() is None:
+            self.process.stdin.write(dumps({"command": "exit"})+"\n")
+            self.process.stdin.close()
+            self.process.wait()
+
+
+_extractor = None
+
+
+def get_extractor():
+    # started on first use and shared by every caller in the process, forked workers start their own
+    global _extractor
+    if _extractor is None or _extractor.pid != getpid() or _extractor.process.poll() is not None:
+        _extractor = JavaExtractor()
+        atexit.register(_extractor.close)
+    return _extractor
@@ -0,0 +1,116 @@
+package extractor;
+
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.comments.CommentsCollection;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * The stages of "parse" measured one at a time over the src/ directory of every test project:
+ *   parse               source text -> CompilationUnit, for every file
+ *   extractFacts        CompilationUnit -> classes of the file (methods, calls, words, source)
+ *   resolveMethodCalls  the merged classes of the project -> calls resolved to their classes
+ *   writeClasses        the resolved classes -> compact JSON, as parse writes them by default
+ * Every stage reads the output of the previous one, prepared once per trial. The test projects
+ * are read from the test.projects system property (the build passes ../test_projects).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractorBenchmark {
+    @Param({"AcmeAir", "BlogPost", "CQRSDemo", "CarbonForum", "Carcassonne", "ChaoliForum", "ConsulDemo",
+            "DayTrader", "FTGO", "FlowChat", "JPetStore", "KanbanBoard", "LakesideMutual", "MicroShop",
+            "MicroservicesBook", "MicroservicesEventSourcing", "OIShoppingList", "PetClinic", "Plants", "QBike",
+            "QuestApp", "ScalableCoffeeShop", "Scoold", "ShopTelegramBot", "ShoppingCart", "SimpleForum",
+            "SocialSoftwareEdition", "Souq", "SpringBlog", "SpringCloudNetflixExample", "TapAndEat",
+            "ThinkMoreForum"})
+    public String project;
+
+    private final SourceFormat sourceFormat = new SourceFormat("text", 0);
+    private final List<String> texts = new ArrayList<>();
+    private final List<ParseResult<CompilationUnit>> parseResults = new ArrayList<>();
+    private JSONObject classes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path sourceDir = Paths.get(System.getProperty("test.projects", "../test_projects"), project, "src");
+        List<Path> sourceFiles;
+        try (Stream<Path> paths = Files.walk(sourceDir)) {
+            sourceFiles = paths
+                .filter(path -> Files.isRegularFile(path) && path.toString().toLowerCase().endsWith(".java"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (Path path : sourceFiles) {
+            String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            ParseResult<CompilationUnit> parseResult = Parser.javaParser.get().parse(text);
+            // files JavaParser cannot read are skipped by the parse command as well
+            if (parseResult.getResult().isPresent()) {
+                texts.add(text);
+                parseResults.add(parseResult);
+            }
+        }
+        classes = extractFacts();
+        Parser.resolveMethodCalls(classes);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(Parser.javaParser.get().parse(text));
+        }
+    }
+
+    @Benchmark
+    public JSONObject extractFacts() {
+        JSONObject jsonObject = new JSONObject();
+        for (int i = 0; i < parseResults.size(); i++) {
+            ParseResult<CompilationUnit> parseResult = parseResults.get(i);
+            JSONObject fileClasses = Parser.getClasses(parseResult.getResult().get(),
+                parseResult.getCommentsCollection().orElseGet(CommentsCollection::new), texts.get(i), sourceFormat);
+            fileClasses.keySet().forEach(className -> jsonObject.put(className, fileClasses.get(className)));
+        }
+        return jsonObject;
+    }
+
+    @Benchmark
+    public JSONObject resolveMethodCalls() {
+        // resolving only looks at method names, so resolving the resolved classes again does the same work
+        Parser.resolveMethodCalls(classes);
+        return classes;
+    }
+
+    @Benchmark
+    public void writeClasses() throws IOException {
+        Parser.writeClasses(classes, Writer.nullWriter(), false);
+    }
+}
@@ -0,0 +1,275 @@
+package extractor;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.visitor.VoidVisitor;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import org.json.JSONObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.io.FileWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class ClassScanner {
+    /*
+     * scan [--roots] [--declarations] directory json_output_path
+     *   writes {"classes": [...]} for the directory, or with --roots {"microservice": [...], ...}
+     *   for every first-level directory of it. --declarations reads the type declarations
+     *   without parsing method bodies, see DeclarationScanner.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            (arg.startsWith("--") ? options : paths).add(arg);
+        }
+        boolean declarationsOnly = options.contains("--declarations");
+        Path baseDir = Paths.get(paths.get(0));
+        JSONObject jsonObject;
+        if (options.contains("--roots")) {
+            jsonObject = getClassesByRoot(baseDir, declarationsOnly);
+        } else {
+            jsonObject = new JSONObject();
+            jsonObject.put("classes", getClasses(List.of(baseDir), declarationsOnly).get(0));
+        }
+        try (FileWriter fileWriter = new FileWriter(paths.get(1))) {
+            fileWriter.write(jsonObject.toString(4));
+        } catch (IOException e) {
+            System.out.println("Error! " + e.getMessage());
+        }
+    }
+
+    // the class names of every first-level directory of baseDir, by directory name
+    static JSONObject getClassesByRoot(Path baseDir, boolean declarationsOnly) throws Exception {
+        List<Path> roots;
+        try (Stream<Path> children = Files.list(baseDir)) {
+            roots = children.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        List<List<String>> classes = getClasses(roots, declarationsOnly);
+        JSONObject jsonObject = new JSONObject();
+        for (int i = 0; i < roots.size(); i++) {
+            jsonObject.put(roots.get(i).getFileName().toString(), classes.get(i));
+        }
+        return jsonObject;
+    }
+
+    /*
+     * The class names of every directory, in the order Files.walk visits its files.
+     * The files of all directories are scanned concurrently.
+     */
+    static List<List<String>> getClasses(List<Path> baseDirs, boolean declarationsOnly) throws Exception {
+        List<List<Callable<List<String>>>> tasks = new ArrayList<>();
+        for (Path baseDir : baseDirs) {
+            List<Callable<List<String>>> dirTasks = new ArrayList<>();
+            try (Stream<Path> paths = Files.walk(baseDir)) {
+                paths.filter(path -> Files.isRegularFile(path) && path.toString().toLowerCase().endsWith(".java"))
+                    .forEach(path -> dirTasks.add(() -> {
+                        try {
+                            return declarationsOnly ? DeclarationScanner.getClasses(path) : getClasses(path);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            return List.of();
+                        }
+                    }));
+            }
+            tasks.add(dirTasks);
+        }
+        ExecutorService pool = Executors.newWorkStealingPool();
+        try {
+            List<Future<List<String>>> results = pool.invokeAll(
+                tasks.stream().flatMap(List::stream).collect(Collectors.toList()));
+            List<List<String>> classes = new ArrayList<>();
+            int next = 0;
+            for (List<Callable<List<String>>> dirTasks : tasks) {
+                List<String> dirClasses = new ArrayList<>();
+                for (int i = 0; i < dirTasks.size(); i++) {
+                    dirClasses.addAll(results.get(next++).get());
+                }
+                classes.add(dirClasses);
+            }
+            return classes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static List<String> getClasses(Path path) throws Exception {
+        CompilationUnit cu = Parser.javaParser.get().parse(path)
+            .getResult()
+            .orElseThrow(() -> new IOException("Failed to parse the file: " + path));
+        VoidVisitor<List<String>> classNameCollector = new ClassNameCollector();
+        List<String> classNames = new ArrayList<>();
+        classNameCollector.visit(cu, classNames);
+        return classNames;
+    }
+
+    private static class ClassNameCollector extends VoidVisitorAdapter<List<String>> {
+        @Override
+        public void visit(ClassOrInterfaceDeclaration cd, List<String> collector) {
+            super.visit(cd, collector);
+            if (!cd.isInnerClass()) {
+                collector.add(cd.getNameAsString());
+            }
+        }
+    }
+
+    /*
+     * Reads the type declarations of a file from its tokens without building a syntax tree.
+     * Comments and literals are skipped, and every block that is not a type body (method and
+     * initializer bodies, field initializers, enum constant bodies) is skipped as a whole.
+     * The names match ClassNameCollector: classes and interfaces that are not inner classes,
+     * nested ones before the type enclosing them. Local classes live in method bodies and
+     * are therefore not listed, and files are not checked for syntax errors.
+     */
+    static class DeclarationScanner {
+        private static class TypeBody {
+            final String name;
+            final boolean collected;
+
+            TypeBody(String name, boolean collected) {
+                this.name = name;
+                this.collected = collected;
+            }
+        }
+
+        private final String source;
+        private int position = 0;
+
+        private DeclarationScanner(String source) {
+            this.source = source;
+        }
+
+        static List<String> getClasses(Path path) throws IOException {
+            return new DeclarationScanner(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)).scan();
+        }
+
+        private List<String> scan() {
+            List<String> classNames = new ArrayList<>();
+            Deque<TypeBody> typeBodies = new ArrayDeque<>();
+            String previous = "";
+            boolean isStatic = false;
+            // the type whose header is being read, waiting for its opening brace
+            String keyword = null;
+            String name = null;
+            int parentheses = 0;
+            String token;
+            while ((token = nextToken()) != null) {
+                if (keyword != null && name == null) {
+                    // the name follows the keyword right away, "record" may also be a plain identifier
+                    if (isIdentifier(token)) {
+                        name = token;
+                    } else {
+                        keyword = null;
+                    }
+                }
+                if (token.equals("(")) {
+                    parentheses++;
+                } else if (token.equals(")")) {
+                    parentheses--;
+                } else if (token.equals("{")) {
+                    if (keyword != null && name != null && parentheses == 0) {
+                        boolean collected = (keyword.equals("class") || keyword.equals("interface"))
+                            && (typeBodies.isEmpty() || keyword.equals("interface") || isStatic);
+                        typeBodies.push(new TypeBody(name, collected));
+                        keyword = null;
+                        name = null;
+                    } else {
+                        skipBlock();
+                    }
+                    isStatic = false;
+                } else if (token.equals("}")) {
+                    if (!typeBodies.isEmpty()) {
+                        TypeBody typeBody = typeBodies.pop();
+                        if (typeBody.collected) {
+                            classNames.add(typeBody.name);
+                        }
+                    }
+                    isStatic = false;
+                } else if (token.equals(";") && parentheses == 0) {
+                    keyword = null;
+                    name = null;
+                    isStatic = false;
+                } else if (token.equals("static")) {
+                    isStatic = true;
+                } else if (keyword == null && !previous.equals(".") && (token.equals("class")
+                        || token.equals("interface") || token.equals("enum") || token.equals("record"))) {
+                    keyword = previous.equals("@") ? "@interface" : token;
+                }
+                previous = token;
+            }
+            return classNames;
+        }
+
+        // skips to the brace closing the one just read
+        private void skipBlock() {
+            int depth = 1;
+            String token;
+            while (depth > 0 && (token = nextToken()) != null) {
+                if (token.equals("{")) {
+                    depth++;
+                } else if (token.equals("}")) {
+                    depth--;
+                }
+            }
+        }
+
+        private static boolean isIdentifier(String token) {
+            return Character.isJavaIdentifierStart(token.charAt(0));
+        }
+
+        /*
+         * The next identifier, keyword or single punctuation character; literals come back as
+         * a placeholder and comments are dropped.
+         */
+        private String nextToken() {
+            while (position < source.length()) {
+                char c = source.charAt(position);
+                if (Character.isWhitespace(c)) {
+                    position++;
+                } else if (source.startsWith("//", position)) {
+                    int end = source.indexOf('\n', position);
+                    position = end < 0 ? source.length() : end + 1;
+                } else if (source.startsWith("/*", position)) {
+                    int end = source.indexOf("*/", position + 2);
+                    position = end < 0 ? source.length() : end + 2;
+                } else if (source.startsWith("\"\"\"", position)) {
+                    int end = position + 3;
+                    while (end < source.length() && !source.startsWith("\"\"\"", end)) {
+                        end += source.charAt(end) == '\\' ? 2 : 1;
+                    }
+                    position = Math.min(end + 3, source.length());
+                    return "\"";
+                } else if (c == '"' || c == '\'') {
+                    int end = position + 1;
+                    while (end < source.length() && source.charAt(end) != c && source.charAt(end) != '\n') {
+                        end += source.charAt(end) == '\\' ? 2 : 1;
+                    }
+                    position = Math.min(end + 1, source.length());
+                    return String.valueOf(c);
+                } else if (Character.isJavaIdentifierPart(c)) {
+                    int start = position;
+                    while (position < source.length() && Character.isJavaIdentifierPart(source.charAt(position))) {
+                        position++;
+                    }
+                    return source.substring(start, position);
+                } else {
+                    position++;
+                    return String.valueOf(c);
+                }
+            }
+            return null;
+        }
+    }
+}
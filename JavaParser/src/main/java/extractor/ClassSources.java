@@ -0,0 +1,78 @@
+package extractor;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.visitor.VoidVisitor;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class ClassSources {
+    /*
+     * sources [--pretty-source] [--max-source-length=N] source_code_path json_output_path
+     *   writes {"ClassName": source, ...} for the classes that are not inner classes of a file
+     *   or of every file under a directory, in the source format of the parse command.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            (arg.startsWith("--") ? options : paths).add(arg);
+        }
+        JSONObject jsonObject = getSources(Paths.get(paths.get(0)), SourceFormat.fromOptions(options));
+
+        try (FileWriter fileWriter = new FileWriter(paths.get(1))) {
+            fileWriter.write(jsonObject.toString(4));
+        } catch (IOException e) {
+            System.out.println("Error! " + e.getMessage());
+        }
+    }
+
+    static JSONObject getSources(Path sourcePath, SourceFormat sourceFormat) throws Exception {
+        JSONObject jsonObject = new JSONObject();
+        List<Path> sourceFiles;
+        try (Stream<Path> paths = Files.walk(sourcePath)) {
+            sourceFiles = paths
+                .filter(path -> Files.isRegularFile(path) && path.toString().toLowerCase().endsWith(".java"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (Path path : sourceFiles) {
+            String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            CompilationUnit cu = Parser.javaParser.get().parse(text)
+                .getResult()
+                .orElseThrow(() -> new IOException("Failed to parse the file: " + path));
+
+            VoidVisitor<List<ClassOrInterfaceDeclaration>> classNodeCollector = new ClassNodeCollector();
+            List<ClassOrInterfaceDeclaration> classes = new ArrayList<>();
+            classNodeCollector.visit(cu, classes);
+
+            int[] lineOffsets = SourceFormat.lineOffsets(text);
+            classes.forEach(cls -> {
+                jsonObject.put(cls.getNameAsString(), sourceFormat.apply(cls, text, lineOffsets));
+            });
+        }
+        return jsonObject;
+    }
+
+    private static class ClassNodeCollector extends VoidVisitorAdapter<List<ClassOrInterfaceDeclaration>> {
+        @Override
+        public void visit(ClassOrInterfaceDeclaration cd, List<ClassOrInterfaceDeclaration> collector) {
+            super.visit(cd, collector);
+            if (!cd.isInnerClass()) {
+                collector.add(cd);
+            }
+        }
+    }
+}
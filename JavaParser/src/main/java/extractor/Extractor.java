@@ -0,0 +1,112 @@
+package extractor;
+
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * The command line of extractor.jar, shared by the Mo2oM, Mono2Multi and HDBSCAN pipelines:
+ *   parse   [--jsonl | --pretty] [--cache=directory] [--max-source-length=N] [--pretty-source | --no-source]
+ *           source_code_path json_output_path
+ *   scan    [--roots] [--declarations] directory json_output_path
+ *   sources [--max-source-length=N] [--pretty-source] source_code_path json_output_path
+ *   daemon
+ */
+class Extractor {
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "";
+        String[] arguments = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+        switch (command) {
+            case "parse":
+                Parser.main(arguments);
+                break;
+            case "scan":
+                ClassScanner.main(arguments);
+                break;
+            case "sources":
+                ClassSources.main(arguments);
+                break;
+            case "daemon":
+                serve();
+                break;
+            default:
+                System.err.println("usage: java -jar extractor.jar parse | scan | sources | daemon [options] [paths]");
+                System.exit(2);
+        }
+    }
+
+    static Optional<String> getOption(List<String> options, String prefix) {
+        return options.stream()
+            .filter(option -> option.startsWith(prefix))
+            .map(option -> option.substring(prefix.length()))
+            .findFirst();
+    }
+
+    /*
+     * Keeps one warmed-up JVM around for many requests. Every line on stdin is a JSON request
+     * and gets exactly one JSON line back on stdout:
+     *   {"command": "parse", "source": path, "output": path, "format": "json" | "jsonl" | "pretty", "cache": directory,
+     *    "pretty_source": false, "no_source": false, "max_source_length": 0}
+     *      -> {"status": "ok", "classes": number of classes written}
+     *   {"command": "scan", "source": directory, "roots": false, "declarations": false}
+     *      -> {"status": "ok", "classes": [top-level class names]}
+     *   {"command": "scan", "source": directory, "roots": true, "declarations": false}
+     *      -> {"status": "ok", "classes": {first-level directory: [class names], ...}}
+     *   {"command": "sources", "source": path, "pretty_source": false, "max_source_length": 0}
+     *      -> {"status": "ok", "classes": {class name: source, ...}}
+     *   {"command": "exit"} or end of input stops the daemon.
+     * A failed request answers {"status": "error", "message": ...} and the daemon keeps serving.
+     */
+    static void serve() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        PrintStream responses = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        // stdout belongs to the protocol, anything else printed goes to stderr
+        System.setOut(System.err);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JSONObject response = new JSONObject();
+            try {
+                JSONObject request = new JSONObject(line);
+                String command = request.getString("command");
+                if (command.equals("exit")) {
+                    break;
+                }
+                Path source = Paths.get(request.getString("source"));
+                if (command.equals("parse")) {
+                    String cache = request.optString("cache", null);
+                    response.put("classes", Parser.parse(source, request.getString("output"),
+                        request.optString("format", "json"), cache == null ? null : Paths.get(cache),
+                        SourceFormat.fromRequest(request)));
+                } else if (command.equals("scan")) {
+                    boolean declarationsOnly = request.optBoolean("declarations");
+                    response.put("classes", request.optBoolean("roots")
+                        ? ClassScanner.getClassesByRoot(source, declarationsOnly)
+                        : ClassScanner.getClasses(List.of(source), declarationsOnly).get(0));
+                } else if (command.equals("sources")) {
+                    response.put("classes", ClassSources.getSources(source, SourceFormat.fromRequest(request)));
+                } else {
+                    throw new IllegalArgumentException("Unknown command: " + command);
+                }
+                response.put("status", "ok");
+            } catch (Exception e) {
+                response.put("status", "error");
+                response.put("message", String.valueOf(e.getMessage()));
+            }
+            responses.println(response);
+        }
+    }
+}
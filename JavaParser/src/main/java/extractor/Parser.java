@@ -0,0 +1,449 @@
+package extractor;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Range;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.CommentsCollection;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class Parser {
+    // every worker thread keeps its own parser, JavaParser instances are not thread-safe
+    static final ThreadLocal<JavaParser> javaParser = ThreadLocal.withInitial(() -> {
+        final ParserConfiguration parserConfiguration = new ParserConfiguration();
+        parserConfiguration.setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
+        return new JavaParser(parserConfiguration);
+    });
+    // part of every cache key, bump it whenever the facts extracted from a file change
+    static final String EXTRACTOR_VERSION = "2";
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            (arg.startsWith("--") ? options : paths).add(arg);
+        }
+        String format = options.contains("--pretty") ? "pretty" : options.contains("--jsonl") ? "jsonl" : "json";
+        Path cacheDir = Extractor.getOption(options, "--cache=").map(Paths::get).orElse(null);
+        try {
+            parse(Paths.get(paths.get(0)), paths.get(1), format, cacheDir, SourceFormat.fromOptions(options));
+        } catch (IOException e) {
+            System.out.println("Error! " + e.getMessage());
+        }
+    }
+
+    static int parse(Path sourcePath, String outputPath, String format, Path cacheDir, SourceFormat sourceFormat)
+            throws Exception {
+        if (cacheDir != null) {
+            Files.createDirectories(cacheDir);
+        }
+        JSONObject jsonObject = Files.isDirectory(sourcePath)
+            ? getProjectClasses(sourcePath, cacheDir, sourceFormat) : getClasses(sourcePath, cacheDir, sourceFormat);
+        resolveMethodCalls(jsonObject);
+
+        try (Writer writer = new BufferedWriter(new FileWriter(outputPath))) {
+            if (format.equals("pretty")) {
+                // the original format, the whole document indented in one string
+                writer.write(jsonObject.toString(4));
+            } else {
+                writeClasses(jsonObject, writer, format.equals("jsonl"));
+            }
+        }
+        return jsonObject.length();
+    }
+
+    /*
+     * Streams the classes one record at a time without indentation, either as a single
+     * JSON object or as JSON Lines with one {"ClassName": {...}} object per line.
+     * The classes keep the order of jsonObject, the same order --pretty writes them in.
+     */
+    static void writeClasses(JSONObject jsonObject, Writer writer, boolean jsonLines) throws IOException {
+        boolean first = true;
+        if (!jsonLines) {
+            writer.write('{');
+        }
+        for (String className : jsonObject.keySet()) {
+            if (jsonLines) {
+                writer.write('{');
+            } else if (!first) {
+                writer.write(',');
+            }
+            writer.write(JSONObject.quote(className));
+            writer.write(':');
+            jsonObject.getJSONObject(className).write(writer);
+            if (jsonLines) {
+                writer.write("}\n");
+            }
+            first = false;
+        }
+        if (!jsonLines) {
+            writer.write('}');
+        }
+    }
+
+    static JSONObject getProjectClasses(Path baseDir, Path cacheDir, SourceFormat sourceFormat) throws Exception {
+        JSONObject jsonObject = new JSONObject();
+        List<Path> sourceFiles;
+        try (Stream<Path> paths = Files.walk(baseDir)) {
+            sourceFiles = paths
+                .filter(path -> Files.isRegularFile(path) && path.toString().toLowerCase().endsWith(".java"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        // parse each compilation unit on its own, idle workers steal the remaining files
+        List<Callable<JSONObject>> tasks = new ArrayList<>();
+        sourceFiles.forEach(path -> tasks.add(() -> {
+            try {
+                return getClasses(path, cacheDir, sourceFormat);
+            } catch (Exception e) {
+                System.err.println("Skipping " + path + ": " + e.getMessage());
+                return new JSONObject();
+            }
+        }));
+        ExecutorService pool = Executors.newWorkStealingPool();
+        try {
+            // merge in file order so that duplicate class names resolve deterministically
+            for (Future<JSONObject> result : pool.invokeAll(tasks)) {
+                JSONObject fileClasses = result.get();
+                fileClasses.keySet().forEach(className -> jsonObject.put(className, fileClasses.get(className)));
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse the project: " + baseDir, e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return jsonObject;
+    }
+
+    static void resolveMethodCalls(JSONObject jsonObject) {
+        // method name -> classes declaring it, in the order the classes are written to classes.json
+        Map<String, List<String>> declaringClasses = new HashMap<>();
+        jsonObject.keySet().forEach(className -> {
+            for (Object methodName : jsonObject.getJSONObject(className).getJSONArray("methods")) {
+                declaringClasses.computeIfAbsent((String) methodName, k -> new ArrayList<>()).add(className);
+            }
+        });
+
+        // a class's own methods win, otherwise the last declaring class does; unknown methods keep their scope
+        jsonObject.keySet().forEach(className -> {
+            for (Object call : jsonObject.getJSONObject(className).getJSONArray("method_calls")) {
+                JSONObject methodCall = (JSONObject) call;
+                List<String> candidates = declaringClasses.get(methodCall.getString("method_name"));
+                if (candidates != null) {
+                    methodCall.put("class_name", candidates.contains(className) ? className : candidates.get(candidates.size() - 1));
+                }
+            }
+        });
+    }
+
+    /*
+     * The classes of one file, before method calls are resolved against the rest of the project.
+     * With a cache directory, the result is stored there as a fragment named after the SHA-256 of
+     * the extractor version, the source format and the file content, so an unchanged file is only
+     * read back next time.
+     */
+    static JSONObject getClasses(Path path, Path cacheDir, SourceFormat sourceFormat) throws Exception {
+        byte[] content = Files.readAllBytes(path);
+        if (cacheDir == null) {
+            return getClasses(path, content, sourceFormat);
+        }
+        Path fragment = cacheDir.resolve(contentHash(content, sourceFormat) + ".json");
+        if (Files.isRegularFile(fragment)) {
+            try {
+                return new JSONObject(Files.readString(fragment));
+            } catch (JSONException e) {
+                System.err.println("Ignoring the corrupt cache fragment " + fragment);
+            }
+        }
+        JSONObject classes = getClasses(path, content, sourceFormat);
+        // write to a temporary file first, identical files may be parsed concurrently
+        Path temporary = Files.createTempFile(cacheDir, "fragment", ".tmp");
+        Files.writeString(temporary, classes.toString());
+        Files.move(temporary, fragment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return classes;
+    }
+
+    static String contentHash(byte[] content, SourceFormat sourceFormat) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((EXTRACTOR_VERSION + "/" + sourceFormat.cacheKey()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        return HexFormat.of().formatHex(digest.digest(content));
+    }
+
+    static JSONObject getClasses(Path path, byte[] content, SourceFormat sourceFormat) throws Exception {
+        // CompilationUnit cu = StaticJavaParser.parse(Files.newInputStream(path));
+        String text = new String(content, StandardCharsets.UTF_8);
+        ParseResult<CompilationUnit> parseResult = javaParser.get().parse(text);
+        CompilationUnit cu = parseResult.getResult()
+            .orElseThrow(() -> new IOException("Failed to parse the file: " + path));
+        return getClasses(cu, parseResult.getCommentsCollection().orElseGet(CommentsCollection::new), text, sourceFormat);
+    }
+
+    static JSONObject getClasses(CompilationUnit cu, CommentsCollection comments, String text, SourceFormat sourceFormat) {
+        int[] lineOffsets = SourceFormat.lineOffsets(text);
+        JSONObject jsonObject = new JSONObject();
+
+        // one traversal collects the classes together with their methods, calls, variables and parameters
+        List<ClassFacts> classes = new ArrayList<>();
+        new ClassFactCollector().visit(cu, classes);
+        collectComments(cu, comments, classes);
+
+        classes.forEach(facts -> {
+            ClassOrInterfaceDeclaration cls = facts.cls;
+            List<String> words = new ArrayList<>();
+            words.add(cls.getNameAsString());
+            words.addAll(facts.methodNames);
+            words.addAll(facts.variableNames);
+            words.addAll(facts.parameterNames);
+
+            facts.comments.forEach(comment -> {
+                String commentString = comment.asString().replaceAll("/\\*", "").replaceAll("\\*/", "").replaceAll("//",
+                        "");
+                String[] commentWords = commentString.split(" ");
+                for (String w : commentWords) {
+                    if (w.trim().length() > 0) {
+                        words.add(w.trim());
+                    }
+                }
+                ;
+            });
+
+            JSONObject classJson = new JSONObject();
+            classJson.put("methods", facts.methodNames);
+            classJson.put("method_calls", facts.methodCalls);
+            classJson.put("words", words);
+            if (sourceFormat.included()) {
+                classJson.put("source", sourceFormat.apply(cls, text, lineOffsets));
+            }
+            jsonObject.put(cls.getNameAsString(), classJson);
+        });
+        return jsonObject;
+    }
+
+    /*
+     * Hands every comment of the file to the classes containing it, in the order
+     * Node.getAllContainedComments() would list them, without walking each class again.
+     * That order is a depth-first walk over the child nodes where the orphan comments
+     * of a node come first and the comment of a child comes right before its subtree,
+     * so each comment gets a sort key made of the child indices leading to it.
+     */
+    static void collectComments(CompilationUnit cu, CommentsCollection comments, List<ClassFacts> classes) {
+        Map<Node, ClassFacts> classFacts = new IdentityHashMap<>();
+        classes.forEach(facts -> classFacts.put(facts.cls, facts));
+        Map<Node, int[]> paths = new IdentityHashMap<>();
+        Map<Integer, List<Node>> topLevelNodesByEndLine = new HashMap<>();
+        cu.getChildNodes().forEach(node -> node.getRange().ifPresent(range ->
+            topLevelNodesByEndLine.computeIfAbsent(range.end.line, k -> new ArrayList<>()).add(node)));
+
+        List<ContainedComment> containedComments = new ArrayList<>();
+        for (Comment comment : comments.getComments()) {
+            List<Node> holders = new ArrayList<>();
+            comment.getCommentedNode().ifPresent(holders::add);
+            if (comment.isLineComment() && !holders.isEmpty() && comment.getRange().isPresent()) {
+                // a line comment at the end of a line can be given to several nodes of that line and
+                // each of them lists it, they all sit under the same top-level node or one ending on that line
+                int line = comment.getRange().get().begin.line;
+                Node topLevelNode = holders.get(0);
+                while (topLevelNode.getParentNode().isPresent() && topLevelNode.getParentNode().get() != cu) {
+                    topLevelNode = topLevelNode.getParentNode().get();
+                }
+                findHolders(topLevelNode, comment, line, holders);
+                for (Node node : topLevelNodesByEndLine.getOrDefault(line, List.of())) {
+                    if (node != topLevelNode) {
+                        findHolders(node, comment, line, holders);
+                    }
+                }
+            }
+            for (Node holder : holders) {
+                holder.getParentNode().ifPresent(parent ->
+                    containedComments.add(new ContainedComment(pathOf(holder, paths), -2, comment, parent)));
+            }
+            comment.getParentNode().ifPresent(parent -> {
+                int orphanIndex = indexOf(parent.getOrphanComments(), comment);
+                if (orphanIndex >= 0) {
+                    containedComments.add(new ContainedComment(pathOf(parent, paths), -1, orphanIndex, comment, parent));
+                }
+            });
+        }
+        containedComments.sort((a, b) -> Arrays.compare(a.key, b.key));
+
+        containedComments.forEach(containedComment -> {
+            Optional<Node> node = Optional.of(containedComment.container);
+            while (node.isPresent()) {
+                ClassFacts facts = classFacts.get(node.get());
+                if (facts != null) {
+                    facts.comments.add(containedComment.comment);
+                }
+                node = node.get().getParentNode();
+            }
+        });
+    }
+
+    private static void findHolders(Node node, Comment comment, int line, List<Node> holders) {
+        Range range = node.getRange().orElse(null);
+        if (range == null || range.begin.line > line || range.end.line < line) {
+            return;
+        }
+        if (node.getComment().orElse(null) == comment && indexOf(holders, node) < 0) {
+            holders.add(node);
+        }
+        node.getChildNodes().forEach(child -> findHolders(child, comment, line, holders));
+    }
+
+    private static int[] pathOf(Node node, Map<Node, int[]> paths) {
+        int[] path = paths.get(node);
+        if (path == null) {
+            Optional<Node> parent = node.getParentNode();
+            if (parent.isPresent()) {
+                int[] parentPath = pathOf(parent.get(), paths);
+                path = Arrays.copyOf(parentPath, parentPath.length + 1);
+                path[parentPath.length] = indexOf(parent.get().getChildNodes(), node);
+            } else {
+                path = new int[0];
+            }
+            paths.put(node, path);
+        }
+        return path;
+    }
+
+    private static int indexOf(List<? extends Node> nodes, Node node) {
+        // Node.equals() compares structure, look for the very same node instead
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class ContainedComment {
+        final int[] key;
+        final Comment comment;
+        // the innermost node whose enclosing classes contain the comment
+        final Node container;
+
+        ContainedComment(int[] path, int marker, Comment comment, Node container) {
+            this(Arrays.copyOf(path, path.length + 1), comment, container);
+            key[path.length] = marker;
+        }
+
+        ContainedComment(int[] path, int marker, int orphanIndex, Comment comment, Node container) {
+            this(Arrays.copyOf(path, path.length + 2), comment, container);
+            key[path.length] = marker;
+            key[path.length + 1] = orphanIndex;
+        }
+
+        private ContainedComment(int[] key, Comment comment, Node container) {
+            this.key = key;
+            this.comment = comment;
+            this.container = container;
+        }
+    }
+
+    private static class ClassFacts {
+        final ClassOrInterfaceDeclaration cls;
+        final List<String> methodNames = new ArrayList<>();
+        final List<JSONObject> methodCalls = new ArrayList<>();
+        final List<String> variableNames = new ArrayList<>();
+        final List<String> parameterNames = new ArrayList<>();
+        final List<Comment> comments = new ArrayList<>();
+
+        ClassFacts(ClassOrInterfaceDeclaration cls) {
+            this.cls = cls;
+        }
+    }
+
+    /*
+     * Collects the classes that are not inner classes, like the parser always did, and
+     * fills their facts in the same traversal. A class nested in another collected class
+     * (a static nested class, an interface or a local class) also counts towards the
+     * enclosing one, so every fact goes to all classes that are currently open.
+     */
+    private static class ClassFactCollector extends VoidVisitorAdapter<List<ClassFacts>> {
+        private final Deque<ClassFacts> openClasses = new ArrayDeque<>();
+
+        @Override
+        public void visit(ClassOrInterfaceDeclaration cd, List<ClassFacts> collector) {
+            if (cd.isInnerClass()) {
+                super.visit(cd, collector);
+                return;
+            }
+            ClassFacts facts = new ClassFacts(cd);
+            openClasses.push(facts);
+            super.visit(cd, collector);
+            openClasses.pop();
+            collector.add(facts);
+        }
+
+        @Override
+        public void visit(MethodDeclaration md, List<ClassFacts> collector) {
+            super.visit(md, collector);
+            openClasses.forEach(facts -> facts.methodNames.add(md.getNameAsString()));
+        }
+
+        @Override
+        public void visit(MethodCallExpr mc, List<ClassFacts> collector) {
+            super.visit(mc, collector);
+            openClasses.forEach(facts -> {
+                JSONObject methodCall = new JSONObject();
+                methodCall.put("class_name", mc.getScope().toString().replace("Optional[", "").replace("]", ""));
+                methodCall.put("method_name", mc.getNameAsString());
+                facts.methodCalls.add(methodCall);
+            });
+        }
+
+        @Override
+        public void visit(VariableDeclarator vd, List<ClassFacts> collector) {
+            super.visit(vd, collector);
+            openClasses.forEach(facts -> facts.variableNames.add(vd.getNameAsString()));
+        }
+
+        @Override
+        public void visit(Parameter p, List<ClassFacts> collector) {
+            super.visit(p, collector);
+            openClasses.forEach(facts -> facts.parameterNames.add(p.getNameAsString()));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package extractor;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * How the "source" of each class is written: sliced from the original text of the file,
+ * rendered by JavaParser's pretty printer as before (--pretty-source), or left out (--no-source).
+ * With maxLength > 0 only its first maxLength characters are kept (--max-source-length=N),
+ * UniXcoder only reads the first 512 tokens of it anyway.
+ */
+class SourceFormat {
+    final String style;
+    final int maxLength;
+
+    SourceFormat(String style, int maxLength) {
+        this.style = style;
+        this.maxLength = maxLength;
+    }
+
+    static SourceFormat fromOptions(List<String> options) {
+        String style = options.contains("--no-source") ? "none" : options.contains("--pretty-source") ? "pretty" : "text";
+        return new SourceFormat(style, Extractor.getOption(options, "--max-source-length=").map(Integer::parseInt).orElse(0));
+    }
+
+    static SourceFormat fromRequest(JSONObject request) {
+        String style = request.optBoolean("no_source") ? "none" : request.optBoolean("pretty_source") ? "pretty" : "text";
+        return new SourceFormat(style, request.optInt("max_source_length"));
+    }
+
+    boolean included() {
+        return !style.equals("none");
+    }
+
+    String apply(ClassOrInterfaceDeclaration cls, String text, int[] lineOffsets) {
+        String source = style.equals("pretty") || cls.getRange().isEmpty() ? cls.toString() : slice(cls, text, lineOffsets);
+        return maxLength > 0 && source.length() > maxLength ? source.substring(0, maxLength) : source;
+    }
+
+    // fragments written with another source format cannot be reused
+    String cacheKey() {
+        return style + ":" + maxLength;
+    }
+
+    // the offset of the first character of every line, line terminators as JavaParser counts them
+    static int[] lineOffsets(String text) {
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n'))) {
+                offsets.add(i + 1);
+            }
+        }
+        return offsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /*
+     * The text of a class as it is written in the file, from its comment (which the pretty
+     * printer writes as well) or its first modifier to its closing brace.
+     */
+    static String slice(ClassOrInterfaceDeclaration cls, String text, int[] lineOffsets) {
+        Range range = cls.getRange().get();
+        Position begin = cls.getComment()
+            .flatMap(Comment::getRange)
+            .map(commentRange -> commentRange.begin)
+            .filter(position -> position.isBefore(range.begin))
+            .orElse(range.begin);
+        int beginOffset = lineOffsets[begin.line - 1] + begin.column - 1;
+        int endOffset = lineOffsets[range.end.line - 1] + range.end.column;
+        return text.substring(beginOffset, Math.min(endOffset, text.length()));
+    }
+}
@@ -1,10 +1,10 @@
 from Mo2oM.main import Mo2oM
+from Mo2oM.clustering import training_modes
 from EvaluationMeasures import *
+from JavaExtractor import get_extractor
 from argparse import ArgumentParser
-from os import makedirs, walk, path, pathsep
-from subprocess import run
-from json import load, dump
-import shutil
+from os import walk, path
+from json import dump
 
 
 parser = ArgumentParser(
@@ -33,6 +33,18 @@ parser.add_argument("--use-tf-idf", dest="use_tf_idf", action="store_true",
                     help="Use TF-IDF instead of UniXcoder for semantic similarity.")
 parser.add_argument("--hard-clustering", dest="hard_clustering", action="store_true",
                     help="Use argmax instead of a threshold value to extract microservice from the membership matrix to simulate hard clustering.")
+parser.add_argument("--batch-size", dest="batch_size", type=int, default=16,
+                    help="number of classes UniXcoder encodes at once")
+parser.add_argument("--threads", dest="n_threads", type=int,
+                    help="number of threads UniXcoder uses on the CPU, all cores by default")
+parser.add_argument("--backend", dest="backend", choices=["fp32", "int8"], default="fp32",
+                    help="UniXcoder backend, int8 runs a dynamically quantized model on the CPU (check its accuracy with UniXcoderEncoder.py)")
+parser.add_argument("--nocd-training", dest="nocd_training", choices=training_modes, default="stochastic",
+                    help="NOCD training on sampled edges, on the full-batch loss, or on the full-batch loss for graphs of up to 2000 classes and 50000 edges (auto)")
+parser.add_argument("--nocd-target-loss", dest="nocd_target_loss", type=float,
+                    help="also report the wall-clock time every NOCD model took to first reach this validation loss")
+parser.add_argument("--improved-gcn", dest="improved_gcn", action="store_true",
+                    help="Use NOCD's ImprovedGCN instead of the GCN.")
 
 args = parser.parse_args()
 
@@ -64,49 +76,23 @@ measures = {"Precision": Precision, "SR": SR,
 base_dir = path.dirname(path.realpath(__file__))
 
 
-def merge_java_files(src_dir, dest_file):
-    with open(dest_file, 'w') as outfile:
-        for root, dirs, files in walk(src_dir):
-            for filename in files:
-                if filename.endswith('.java'):
-                    filepath = path.join(root, filename)
-                    with open(filepath) as infile:
-                        lines = infile.readlines()
-                        for line in lines:
-                            if not line.startswith('package'):
-                                outfile.write(line)
-                    outfile.write('\n')
-
-
 if args.project_directory:
-    print("merging source files...", end="\t", flush=True)
+    print("scanning microservices...", end="\t", flush=True)
     if args.project_directory.endswith("/"):
         args.project_directory = args.project_directory[:-1]
-    project_dir_name = args.project_directory.split('/')[-1]
     true_ms_dirs = next(walk(args.project_directory))[1]
-    if path.isdir(".data/"):
-        if input("the previous data directory will be deleted; proceed? (Y/n): ") in ["n", "no", "N", "No", "NO"]:
-            print("operation cancelled.")
-            exit()
-        shutil.rmtree(".data/", ignore_errors=True)
-    true_ms_classnames = []
-    libs = path.join(base_dir, "Mo2oM/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "Mono2Multi/JavaParser/lib/json-20230618.jar")
-    makedirs(path.join(base_dir, f".data/{project_dir_name}"), exist_ok=True)
-    for directory in true_ms_dirs:
-        if directory.endswith("/"):
-            directory = directory[:-1]
-        json_path = path.join(base_dir, f".data/{project_dir_name}/{directory}.json")
-        run(['java', '-cp', libs, path.join(base_dir, 'Mo2oM/JavaParser/ClassScanner.java'), path.join(args.project_directory, directory), json_path])
-        with open(json_path, "rt") as classes_file:
-            true_ms_classnames.append(load(classes_file)["classes"])
+    ms_classnames = get_extractor().scan_roots(args.project_directory)
+    true_ms_classnames = [ms_classnames[directory] for directory in true_ms_dirs]
 
-    args.file_path = path.join(base_dir, f".data/{project_dir_name}/OneFileSource.java")
-    merge_java_files(args.project_directory, args.file_path)
+    # the parser takes the project directory as is and parses its files in parallel
+    args.file_path = args.project_directory
     print("done!")
 
 print("\n--- Mo2oM ---")
 
-clusters, classes_info = Mo2oM(args.file_path, args.n_clusters, args.threshold, args.alpha, args.use_tf_idf)
+clusters, classes_info = Mo2oM(args.file_path, args.n_clusters, args.threshold, args.alpha, args.use_tf_idf,
+                               args.batch_size, args.n_threads, args.backend, args.nocd_training, args.improved_gcn,
+                               args.nocd_target_loss)
 class_names = list(classes_info)
 if args.project_directory:
     true_microservices = [{-1} for _ in classes_info]
@@ -1,4 +1,8 @@
 from Mo2oM import nocd
+from concurrent.futures import ProcessPoolExecutor
+from multiprocessing import get_context
+from os import cpu_count
+from time import perf_counter
 import scipy.sparse as sp
 import numpy as np
 import torch
@@ -13,14 +17,32 @@ torch.use_deterministic_algorithms(True)
 np.random.seed(42)
 
 
-def overlapping_community_detection(A, X, K, threshold, membership_only=False):
-    # set torch device: cuda vs cpu
+# the "auto" training mode trains on the full-batch loss for graphs up to this size, on sampled edges above it
+full_batch_max_nodes = 2000
+full_batch_max_edges = 50000
+training_modes = ["stochastic", "full", "auto"]
+
+
+def preprocess(A, X, improved_gcn=False):
+    # the GCN input: the features next to the adjacency matrix, and the normalized adjacency matrix
+    gcn = nocd.nn.ImprovedGCN if improved_gcn else nocd.nn.GCN
+    return sp.hstack([X, A]).tocsr(), gcn.normalize_adj_matrix(A)
+
+
+def train_nocd(A, x_norm, adj_norm, K, num_workers=0, training="stochastic", improved_gcn=False, target_loss=None):
+    # trains one NOCD model on preprocessed inputs and returns its min-max scaled memberships.
+    # num_workers: data loader processes sampling the edges, 0 samples them in this process
+    # training: "stochastic" trains on sampled edges and validates every 25 epochs, "full" trains on the full-batch
+    # loss and validates every epoch, "auto" picks "full" for graphs up to full_batch_max_nodes/edges
+    # improved_gcn: uses ImprovedGCN instead of GCN, preprocess() must have been called with the same value
+    # target_loss: also reports when the validation loss first reached this value
     device = torch.device("cuda" if torch.cuda.is_available() else "cpu")
     torch.set_default_device(device)
-    print(f"[NOCD] using device {device}", flush=True)
-
-    x_norm = sp.hstack([X, A])
     x_norm = nocd.utils.to_sparse_tensor(x_norm).to(device)
+    adj_norm = nocd.utils.to_sparse_tensor(adj_norm).to(device)
+    if training == "auto":
+        small = A.shape[0] <= full_batch_max_nodes and A.nnz <= full_batch_max_edges
+        training = "full" if small else "stochastic"
 
     # hyperparameters
     hidden_sizes = [128]    # hidden sizes of the GNN
@@ -30,44 +52,58 @@ def overlapping_community_detection(A, X, K, threshold, membership_only=False):
     lr = 1e-3               # learning rate
     max_epochs = 500        # number of epochs to train
     balance_loss = True     # whether to use balanced loss
-    stochastic_loss = True  # whether to use stochastic or full-batch training
+    stochastic_loss = training == "stochastic"  # whether to use stochastic or full-batch training
     batch_size = 20000      # batch size (only for stochastic training)
+    validation_interval = 25 if stochastic_loss else 1  # epochs between two validations
+    patience = 10 if stochastic_loss else 50            # validations without improvement before stopping
 
-    sampler = nocd.sampler.get_edge_sampler(A, batch_size, batch_size, num_workers=2)
-    gnn = nocd.nn.GCN(x_norm.shape[1], hidden_sizes, K, dropout=dropout, batch_norm=batch_norm).to(device)
-    adj_norm = gnn.normalize_adj(A)
+    if stochastic_loss:
+        sampler = nocd.sampler.get_edge_sampler(A, batch_size, batch_size, num_workers=num_workers)
+    else:
+        sampler = (None for _ in range(max_epochs+2))
+    if improved_gcn:
+        gnn = nocd.nn.ImprovedGCN(x_norm.shape[1], hidden_sizes, K, dropout=dropout).to(device)
+    else:
+        gnn = nocd.nn.GCN(x_norm.shape[1], hidden_sizes, K, dropout=dropout, batch_norm=batch_norm).to(device)
     decoder = nocd.nn.BerpoDecoder(A.shape[0], A.nnz, balance_loss=balance_loss)
     opt = torch.optim.Adam(gnn.parameters(), lr=lr)
 
     val_loss = np.inf
     validation_fn = lambda: val_loss
-    early_stopping = nocd.train.NoImprovementStopping(validation_fn, patience=10)
+    early_stopping = nocd.train.NoImprovementStopping(validation_fn, patience=patience)
     model_saver = nocd.train.ModelSaver(gnn)
+    start = perf_counter()
+    best_loss, best_time, target_time = np.inf, 0, None
 
     for epoch, batch in enumerate(sampler):
         if epoch > max_epochs:
             break
-        if epoch % 25 == 0:
+        if epoch % validation_interval == 0:
             with torch.no_grad():
                 gnn.eval()
                 # Compute validation loss
                 Z = F.relu(gnn(x_norm, adj_norm))
                 val_loss = decoder.loss_full(Z, A)
-                print(f'[NOCD] Epoch {epoch:4d}, loss.full = {val_loss:.4f}')
+                if val_loss < best_loss:
+                    best_loss, best_time = float(val_loss), perf_counter() - start
+                if target_loss is not None and target_time is None and val_loss <= target_loss:
+                    target_time = perf_counter() - start
+                if epoch % 25 == 0:
+                    print(f'[NOCD] K = {K}, Epoch {epoch:4d}, loss.full = {val_loss:.4f}')
                 # Check if it's time for early stopping / to save the model
                 early_stopping.next_step()
                 if early_stopping.should_save():
                     model_saver.save()
                 if early_stopping.should_stop():
-                    print(f'[NOCD] Breaking due to early stopping at epoch {epoch}')
+                    print(f'[NOCD] K = {K}, Breaking due to early stopping at epoch {epoch}')
                     break
                 
         # Training step
         gnn.train()
         opt.zero_grad()
         Z = F.relu(gnn(x_norm, adj_norm))
-        ones_idx, zeros_idx = batch
         if stochastic_loss:
+            ones_idx, zeros_idx = batch
             loss = decoder.loss_batch(Z, ones_idx, zeros_idx)
         else:
             loss = decoder.loss_full(Z, A)
@@ -75,15 +111,59 @@ def overlapping_community_detection(A, X, K, threshold, membership_only=False):
         loss.backward()
         opt.step()
 
+    target = "" if target_loss is None else (f", loss {target_loss:.4f} not reached" if target_time is None else
+                                             f", loss {target_loss:.4f} reached after {target_time:.2f}s")
+    print(f'[NOCD] K = {K}, {training} training took {perf_counter() - start:.2f}s, '
+          f'best loss.full = {best_loss:.4f} after {best_time:.2f}s{target}', flush=True)
     Z = F.relu(gnn(x_norm, adj_norm))
     Z_min = torch.min(Z)
     Z_max = torch.max(Z)
     denominator = Z_max - Z_min + 1e-8
     Z = (Z - Z_min) / denominator
-    memberships = Z.cpu().detach().numpy()
+    return Z.cpu().detach().numpy()
+
+
+def overlapping_community_detection(A, X, K, threshold, membership_only=False):
+    device = torch.device("cuda" if torch.cuda.is_available() else "cpu")
+    print(f"[NOCD] using device {device}", flush=True)
+    memberships = train_nocd(A, *preprocess(A, X), K)
     return memberships if membership_only else process_threshold(threshold, memberships)
 
 
+def _init_sweep_worker(n_threads):
+    torch.set_num_threads(n_threads)
+
+
+def _train_seeded(A, x_norm, adj_norm, K, seed, training, improved_gcn, target_loss):
+    # every model starts from the same seed, so its memberships do not depend on which models were trained before it
+    torch.manual_seed(seed)
+    torch.cuda.manual_seed_all(seed)
+    np.random.seed(seed)
+    return train_nocd(A, x_norm, adj_norm, K, training=training, improved_gcn=improved_gcn, target_loss=target_loss)
+
+
+def nocd_sweep(A, features, n_clusters, n_workers=None, seed=42, training="stochastic", improved_gcn=False,
+               target_loss=None):
+    # trains a NOCD model for every number of clusters and every feature matrix, {(K, feature name): memberships}.
+    # the inputs are preprocessed once and the models trained concurrently, one process per core by default;
+    # training, improved_gcn and target_loss are passed to train_nocd()
+    inputs = {name: preprocess(A, X, improved_gcn) for name, X in features.items()}
+    tasks = [(int(K), name) for K in n_clusters for name in features]
+    n_cores = cpu_count() or 1
+    n_workers = min(n_workers or n_cores, len(tasks))
+    if torch.cuda.is_available() or n_workers <= 1:
+        # a forked process cannot use CUDA, and the GPU runs the models one at a time anyway
+        print(f"[NOCD] training {len(tasks)} models", flush=True)
+        return {(K, name): _train_seeded(A, *inputs[name], K, seed, training, improved_gcn, target_loss)
+                for K, name in tasks}
+    print(f"[NOCD] training {len(tasks)} models in {n_workers} processes", flush=True)
+    with ProcessPoolExecutor(n_workers, mp_context=get_context("fork"), initializer=_init_sweep_worker,
+                             initargs=(max(1, n_cores // n_workers),)) as pool:
+        futures = {(K, name): pool.submit(_train_seeded, A, *inputs[name], K, seed, training, improved_gcn, target_loss)
+                   for K, name in tasks}
+        return {task: future.result() for task, future in futures.items()}
+
+
 def process_threshold(threshold, memberships):
     if threshold == None:
         import matplotlib.pyplot as plt
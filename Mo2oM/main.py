@@ -1,35 +1,31 @@
-from os import path, pathsep
-from subprocess import run
-from json import load
+from os import path
+from json import loads
 import scipy.sparse as sp
 import numpy as np
+from JavaExtractor import get_extractor, cache_dir
 from Mo2oM.similarity_analysis import structural_similarity, semantic_similarity
-from Mo2oM.clustering import overlapping_community_detection, process_threshold
+from Mo2oM.clustering import nocd_sweep, process_threshold
 
 
-def Mo2oM(source_code_path, n_clusters, threshold=None, alpha=0.5, use_tf_idf=False):
+def parse(source_code_path):
     # parse the source code and get classes, methods, etc.
     print("\n[Mo2oM] parsing the code...", end=" ", flush=True)
     base_dir = path.dirname(path.realpath(__file__))
-    libs = path.join(base_dir, "JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "JavaParser/lib/json-20230618.jar")
-    json_path = path.join(base_dir, "JavaParser/classes.json")
-    run(['java', '-cp', libs, path.join(base_dir, 'JavaParser/Parser.java'), source_code_path, json_path]) 
+    json_path = path.join(base_dir, "classes.jsonl")
+    # UniXcoder reads at most 512 tokens of each class source, far less than 10000 characters
+    get_extractor().parse(source_code_path, json_path, "jsonl", cache_dir=cache_dir,
+                          max_source_length=10000)
+    classes_info = {}
     with open(json_path, "rt") as classes_file:
-        classes_info = load(classes_file)
+        for line in classes_file:
+            classes_info.update(loads(line))
     print("done!")
+    return classes_info
 
-    # find class names for each method call
-    print("[Mo2oM] analyzing method calls...", end=" ", flush=True)
-    for clss in classes_info:
-        for call in classes_info[clss]["method_calls"]:
-            for other_clss in classes_info:
-                if call["method_name"] in classes_info[other_clss]["methods"]:
-                    call["class_name"] = other_clss
-                    if clss == other_clss:
-                        break
-    print("done!")
 
-    # get class similarity metrices to feed to NOCD
+def similarity_matrices(classes_info, use_tf_idf=False, batch_size=16, n_threads=None, backend="fp32"):
+    # the structural similarity matrix, the adjacency matrix of the classes that call each other,
+    # and the semantic feature matrix
     print("[Mo2oM] building similarity matrices", flush=True)
     structural_similarity_matrix = structural_similarity(classes_info)
     adjacency_matrix = sp.csr_matrix((structural_similarity_matrix != 0).astype(int))
@@ -38,8 +34,18 @@ def Mo2oM(source_code_path, n_clusters, threshold=None, alpha=0.5, use_tf_idf=Fa
         from Mo2oM.similarity_analysis import tf_idf_semantic_similarity
         semantic_similarity_matrix = tf_idf_semantic_similarity(classes_info)
     else:
-        semantic_similarity_matrix = semantic_similarity(classes_info)
+        semantic_similarity_matrix = semantic_similarity(classes_info, batch_size, n_threads, backend)
     print("[Mo2oM] similarity matrices built successfully!", flush=True)
+    return structural_similarity_matrix, adjacency_matrix, semantic_similarity_matrix
+
+
+def Mo2oM(source_code_path, n_clusters, threshold=None, alpha=0.5, use_tf_idf=False, batch_size=16, n_threads=None,
+          backend="fp32", nocd_training="stochastic", improved_gcn=False, nocd_target_loss=None):
+    classes_info = parse(source_code_path)
+
+    # get class similarity metrices to feed to NOCD
+    structural_similarity_matrix, adjacency_matrix, semantic_similarity_matrix = similarity_matrices(
+        classes_info, use_tf_idf, batch_size, n_threads, backend)
 
     # --- DEBUG SECTION
 
@@ -56,37 +62,35 @@ def Mo2oM(source_code_path, n_clusters, threshold=None, alpha=0.5, use_tf_idf=Fa
 
     # --- DEBUG SECTION
 
-    if isinstance(n_clusters, int):
-        if alpha == 0:
-            return overlapping_community_detection(adjacency_matrix, sp.csr_matrix(structural_similarity_matrix), n_clusters, threshold), classes_info
-        elif alpha == 1:
-            return overlapping_community_detection(adjacency_matrix, semantic_similarity_matrix, n_clusters, threshold), classes_info
-        unixcoder_membership = overlapping_community_detection(adjacency_matrix, semantic_similarity_matrix, n_clusters, threshold, membership_only=True)
-        structural_membership = overlapping_community_detection(adjacency_matrix, sp.csr_matrix(structural_similarity_matrix), n_clusters, threshold, membership_only=True)
-        if isinstance(alpha, list):
-            clusterings = []
-            for alpha_value in alpha:
-                print(f"[Mo2oM] alpha = {alpha_value}", flush=True)
-                combined_membership = alpha_value * unixcoder_membership + (1 - alpha_value) * structural_membership
-                clusterings.append(process_threshold(threshold, combined_membership))
-            return clusterings, classes_info
-        combined_membership = alpha * unixcoder_membership + (1 - alpha) * structural_membership
-        return process_threshold(threshold, combined_membership), classes_info
-    elif isinstance(n_clusters, str) and n_clusters == "Scanniello":
+    if isinstance(n_clusters, str) and n_clusters == "Scanniello":
         len_classes = len(classes_info)
         n_clusters = np.arange(2, (len_classes//2)+2, 2)
         print(f"[Mo2oM] clustering with sizes from 2 to {(len_classes//2)+2}", flush=True)
+    single_n_clusters = isinstance(n_clusters, int)
+    if single_n_clusters:
+        n_clusters = [n_clusters]
     assert isinstance(n_clusters, (list, np.ndarray)), "n_clusters should either be a list of integers or a single integer"
+
+    # every model of every number of clusters is trained at once
+    features = {}
+    if alpha != 0:
+        features["semantic"] = semantic_similarity_matrix
+    if alpha != 1:
+        features["structural"] = sp.csr_matrix(structural_similarity_matrix)
+    memberships = nocd_sweep(adjacency_matrix, features, n_clusters, training=nocd_training, improved_gcn=improved_gcn,
+                             target_loss=nocd_target_loss)
+
     clusterings = []
-    for i in range(len(n_clusters)):
-        print(f"[Mo2oM] n_clusters = {n_clusters[i]}")
+    for K in n_clusters:
+        K = int(K)
+        print(f"[Mo2oM] n_clusters = {K}")
         if alpha == 0:
-            clusterings.append(overlapping_community_detection(adjacency_matrix, sp.csr_matrix(structural_similarity_matrix), n_clusters[i], threshold))
+            clusterings.append(process_threshold(threshold, memberships[(K, "structural")]))
         elif alpha == 1:
-            clusterings.append(overlapping_community_detection(adjacency_matrix, semantic_similarity_matrix, n_clusters[i], threshold))
+            clusterings.append(process_threshold(threshold, memberships[(K, "semantic")]))
         else:
-            unixcoder_membership = overlapping_community_detection(adjacency_matrix, semantic_similarity_matrix, n_clusters[i], threshold, membership_only=True)
-            structural_membership = overlapping_community_detection(adjacency_matrix, sp.csr_matrix(structural_similarity_matrix), n_clusters[i], threshold, membership_only=True)
+            unixcoder_membership = memberships[(K, "semantic")]
+            structural_membership = memberships[(K, "structural")]
             if isinstance(alpha, list):
                 clusterings_results = []
                 for alpha_value in alpha:
@@ -97,4 +101,6 @@ def Mo2oM(source_code_path, n_clusters, threshold=None, alpha=0.5, use_tf_idf=Fa
             else:
                 combined_membership = alpha * unixcoder_membership + (1 - alpha) * structural_membership
                 clusterings.append(process_threshold(threshold, combined_membership))
+    if single_n_clusters:
+        return clusterings[0], classes_info
     return clusterings, classes_info
@@ -68,8 +68,8 @@ class GCN(nn.Module):
             self.batch_norm = None
 
     @staticmethod
-    def normalize_adj(adj : sp.csr_matrix):
-        """Normalize adjacency matrix and convert it to a sparse tensor."""
+    def normalize_adj_matrix(adj : sp.csr_matrix):
+        """Normalize adjacency matrix, keeping it a scipy matrix or a tensor."""
         if sp.isspmatrix(adj):
             adj = adj.tolil()
             adj.setdiag(1)
@@ -81,7 +81,12 @@ class GCN(nn.Module):
             deg = adj.sum(1)
             deg_sqrt_inv = 1 / torch.sqrt(deg)
             adj_norm = adj * deg_sqrt_inv[:, None] * deg_sqrt_inv[None, :]
-        return to_sparse_tensor(adj_norm)
+        return adj_norm
+
+    @staticmethod
+    def normalize_adj(adj : sp.csr_matrix):
+        """Normalize adjacency matrix and convert it to a sparse tensor."""
+        return to_sparse_tensor(GCN.normalize_adj_matrix(adj))
 
     def forward(self, x, adj):
         for idx, gcn in enumerate(self.layers):
@@ -64,20 +64,34 @@ class ImprovedGCN(nn.Module):
             self.layer_norm = None
 
     @staticmethod
-    def normalize_adj(adj : sp.csr_matrix):
-        """Normalize adjacency matrix and convert it to a sparse tensor."""
+    def normalize_adj_matrix(adj : sp.csr_matrix):
+        """Normalize adjacency matrix, keeping it a scipy matrix or a tensor.
+
+        The matrix is symmetrized first, an edge stored in one direction only counts in both. Without self-loops an
+        isolated node has degree 0, its row and column stay 0 instead of becoming inf/NaN.
+        """
         if sp.isspmatrix(adj):
-            adj = adj.tolil()
+            adj = adj.maximum(adj.T).tolil()
             adj.setdiag(0)
             adj = adj.tocsr()
-            deg = np.ravel(adj.sum(1))
-            deg_sqrt_inv = 1 / np.sqrt(deg)
+            adj.eliminate_zeros()
+            deg = np.ravel(adj.sum(1)).astype(np.float64)
+            deg_sqrt_inv = np.zeros_like(deg)
+            np.divide(1, np.sqrt(deg), out=deg_sqrt_inv, where=deg != 0)
             adj_norm = adj.multiply(deg_sqrt_inv[:, None]).multiply(deg_sqrt_inv[None, :])
         elif torch.is_tensor(adj):
+            adj = torch.maximum(adj, adj.T)
+            adj = adj * (1 - torch.eye(adj.shape[0], dtype=adj.dtype, device=adj.device))
             deg = adj.sum(1)
             deg_sqrt_inv = 1 / torch.sqrt(deg)
+            deg_sqrt_inv[deg == 0] = 0
             adj_norm = adj * deg_sqrt_inv[:, None] * deg_sqrt_inv[None, :]
-        return to_sparse_tensor(adj_norm)
+        return adj_norm
+
+    @staticmethod
+    def normalize_adj(adj : sp.csr_matrix):
+        """Normalize adjacency matrix and convert it to a sparse tensor."""
+        return to_sparse_tensor(ImprovedGCN.normalize_adj_matrix(adj))
 
     def forward(self, x, adj):
         for idx, gcn in enumerate(self.layers):
@@ -39,6 +39,64 @@ class EdgeSampler(data_utils.Dataset):
     def __len__(self):
         return 2**32
 
+class InProcessEdgeSampler:
+    """Sample the same batches as EdgeSampler in the training process, without a DataLoader.
+
+    The edges are kept as flat indices i * num_nodes + j, so the non-edge test is a vectorized
+    lookup: a boolean table of every index for small graphs, a binary search in the sorted
+    edge indices otherwise. Batch k uses the random stream of seed k, like EdgeSampler[k].
+
+    Args:
+        A: adjacency matrix.
+        num_pos: number of edges per batch.
+        num_neg: number of non-edges per batch.
+    """
+    max_table_size = 2**26
+
+    def __init__(self, A, num_pos=1000, num_neg=1000):
+        self.num_pos = num_pos
+        self.num_neg = num_neg
+        self.edges = np.transpose(A.nonzero())
+        self.num_nodes = A.shape[0]
+        self.num_edges = self.edges.shape[0]
+        edge_keys = self.edges[:, 0].astype(np.int64) * self.num_nodes + self.edges[:, 1]
+        if self.num_nodes**2 <= self.max_table_size:
+            self.edge_table = np.zeros(self.num_nodes**2, dtype=bool)
+            self.edge_table[edge_keys] = True
+            self.edge_keys = None
+        else:
+            self.edge_table = None
+            self.edge_keys = np.unique(edge_keys)
+
+    def is_edge(self, rows, cols):
+        keys = rows * self.num_nodes + cols
+        if self.edge_table is not None:
+            return self.edge_table[keys]
+        positions = np.minimum(np.searchsorted(self.edge_keys, keys), len(self.edge_keys) - 1)
+        return self.edge_keys[positions] == keys
+
+    def __getitem__(self, key):
+        random_state = np.random.RandomState(key)
+        edges_idx = random_state.randint(0, self.num_edges, size=self.num_pos, dtype=np.int64)
+        next_edges = self.edges[edges_idx, :]
+
+        # Select num_neg non-edges
+        generated = False
+        while not generated:
+            candidate_ne = random_state.randint(0, self.num_nodes, size=(2*self.num_neg, 2), dtype=np.int64)
+            cne1, cne2 = candidate_ne[:, 0], candidate_ne[:, 1]
+            to_keep = ~self.is_edge(cne1, cne2) & (cne1 != cne2)
+            next_nonedges = candidate_ne[to_keep][:self.num_neg]
+            generated = to_keep.sum() >= self.num_neg
+        return torch.LongTensor(next_edges), torch.LongTensor(next_nonedges)
+
+    def __iter__(self):
+        for key in range(2**32):
+            yield self[key]
+
+    def __len__(self):
+        return 2**32
+
 def collate_fn(batch):
     edges, nonedges = batch[0]
     return (edges, nonedges)
@@ -49,5 +107,49 @@ def seed_worker(worker_id):
     random.seed(worker_seed)
 
 def get_edge_sampler(A, num_pos=1000, num_neg=1000, num_workers=2):
+    # num_workers=0 samples in the calling process, the batches are the same
+    if num_workers == 0:
+        return InProcessEdgeSampler(A, num_pos, num_neg)
     data_source = EdgeSampler(A, num_pos, num_neg)
     return data_utils.DataLoader(data_source, num_workers=num_workers, collate_fn=collate_fn, worker_init_fn=seed_worker, generator=torch.Generator().manual_seed(42))
+
+
+def compare_samplers(A, num_batches=100, num_pos=20000, num_neg=20000, num_workers=2):
+    """Time a training run's worth of batches of both samplers and check that they are equal."""
+    from time import perf_counter
+    times = []
+    batches = []
+    for workers in [num_workers, 0]:
+        start = perf_counter()
+        sampled = []
+        for batch, _ in zip(get_edge_sampler(A, num_pos, num_neg, num_workers=workers), range(num_batches)):
+            sampled.append(batch)
+        times.append(perf_counter() - start)
+        batches.append(sampled)
+    same = all(torch.equal(a[0], b[0]) and torch.equal(a[1], b[1]) for a, b in zip(*batches))
+    print(f"{A.shape[0]} nodes, {A.nnz} edges: {1000*times[0]/num_batches:.2f}ms per batch with {num_workers} "
+          f"data loader workers, {1000*times[1]/num_batches:.2f}ms in process, same batches: {same}", flush=True)
+    return times
+
+
+if __name__ == "__main__":
+    # python -m Mo2oM.nocd.sampler [project directories], all test projects by default
+    from glob import glob
+    from json import load
+    from os import path
+    from sys import argv
+    from tempfile import TemporaryDirectory
+    from JavaExtractor import get_extractor, cache_dir
+    from StructuralSimilarity import structural_similarity
+
+    with TemporaryDirectory() as temp_dir:
+        for project_directory in argv[1:] or sorted(glob("test_projects/*/src")):
+            json_path = path.join(temp_dir, "classes.json")
+            get_extractor().parse(project_directory, json_path, cache_dir=cache_dir, include_source=False)
+            with open(json_path, "rt") as classes_file:
+                classes_info = load(classes_file)
+            # the adjacency matrix of Mo2oM
+            A = sp.csr_matrix((structural_similarity(classes_info) != 0).astype(int))
+            if A.nnz:
+                print(project_directory, end=": ")
+                compare_samplers(A)
@@ -1,45 +1,11 @@
 import numpy as np
 import scipy.sparse as sp
+from StructuralSimilarity import structural_similarity
 
 
-def _calls(ci, cj, classes_info):
-    return len([
-        1 for call in classes_info[ci]["method_calls"]
-        if call["class_name"] == cj
-    ])
-
-
-def _calls_in(ci, classes_info):
-    return sum(
-        [_calls(cj, ci, classes_info) for cj in classes_info])
-
-
-def structural_similarity(classes_info):
-    len_classes_info = len(classes_info)
-    structural_similarity_matrix = np.zeros((len_classes_info, len_classes_info))
-    clss_names = list(classes_info.keys())
-    for i in range(len_classes_info):
-        ci = clss_names[i]
-        for j in range(i+1,len_classes_info):
-            cj = clss_names[j]
-            if _calls_in(ci, classes_info) != 0 and _calls_in(cj, classes_info) != 0:
-                structural_similarity_matrix[i][j] = (1 / 2) * (
-                    _calls(ci, cj, classes_info) / _calls_in(cj, classes_info) +
-                    _calls(cj, ci, classes_info) / _calls_in(ci, classes_info))
-            elif _calls_in(ci, classes_info) == 0 and _calls_in(cj, classes_info) != 0:
-                structural_similarity_matrix[i][j] = _calls(ci, cj, classes_info) / _calls_in(cj, classes_info)
-            elif _calls_in(ci, classes_info) != 0 and _calls_in(cj, classes_info) == 0:
-                structural_similarity_matrix[i][j] = _calls(cj, ci, classes_info) / _calls_in(ci, classes_info)
-            else:
-                structural_similarity_matrix[i][j] = 0
-        print(f"\r[StructuralSimilarity] {int(100*(i+1)/len_classes_info)}%", end="", flush=True)
-    print(f"\r[StructuralSimilarity] 100%", flush=True)
-    return structural_similarity_matrix
-
-
-def semantic_similarity(classes_info):
+def semantic_similarity(classes_info, batch_size=16, n_threads=None, backend="fp32"):
     import torch
-    from Mono2Multi.unixcoder import UniXcoder
+    from UniXcoderEncoder import encode
 
     torch.manual_seed(42)
     torch.cuda.manual_seed(42)
@@ -48,27 +14,8 @@ def semantic_similarity(classes_info):
     torch.use_deterministic_algorithms(True)
     np.random.seed(42)
 
-    device = torch.device("cuda" if torch.cuda.is_available() else "cpu")
-    print(f"[SemanticSimilarity] using device {device}", flush=True)
-    model = UniXcoder("microsoft/unixcoder-base")
-    model.to(device)
-
-    len_classes_info = len(classes_info)
-    i = 0
-    for clss in classes_info:
-        source_i = classes_info[clss]["source"]
-        tokens_ids = model.tokenize([source_i],max_length=512,mode="<encoder-only>")
-        source_ids = torch.tensor(tokens_ids).to(device)
-        with torch.no_grad():
-            embedding = model(source_ids)[1]
-            embedding = torch.nn.functional.normalize(embedding, p=2, dim=1)
-            if i == 0:
-                embeddings = embedding
-            else:
-                embeddings = torch.vstack((embeddings, embedding))
-        i += 1
-        print(f"\r[SemanticSimilarity] {int(100*i/len_classes_info)}%", end="", flush=True)
-    print(f"\r[SemanticSimilarity] 100%", flush=True)
+    embeddings = encode([classes_info[clss]["source"] for clss in classes_info],
+                        batch_size=batch_size, n_threads=n_threads, backend=backend)
 
     # --- DEBUG SECTION
 
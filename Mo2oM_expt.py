@@ -1,24 +1,26 @@
-from Mo2oM.main import Mo2oM
+from Mo2oM.main import parse, similarity_matrices
+from Mo2oM.clustering import nocd_sweep, process_threshold, training_modes
 from EvaluationMeasures import *
+from JavaExtractor import get_extractor
+from SweepRunner import run_sweep
 from argparse import ArgumentParser
-from os import makedirs, walk, path, pathsep
-from subprocess import run
-from json import load, dump
+from os import walk, path
+import scipy.sparse as sp
 import numpy as np
-import shutil
+import torch
 
 
 parser = ArgumentParser(
     prog='python Mo2oM_expt.py',
     description='Experiment versoin of the Mo2oM tool.',
-    epilog='example usage: python Mo2oM_expt.py -f test_projects/JPetStore/OneFileSource.java --n-clusters 3 --threshold 0.1 0.7 -e ICP NED -o output.json')
+    epilog='example usage: python Mo2oM_expt.py -f test_projects/JPetStore/OneFileSource.java --n-clusters 3 --threshold 0.1 0.7 -e ICP NED -o output.jsonl')
 
 parser.add_argument("-f", "--file", dest="file_path",
                     help="path to the java source code file (use this option if your whole monolithic program is in one file)")
 parser.add_argument("-p", "--project", dest="project_directory",
                     help="path to the java project directory, (use this option if your monolithic program is in multiple files) this option overrides --file")
 parser.add_argument("-o", "--output-file", dest="output_file",
-                    help="output file name to save results in")
+                    help="output file name to save results in, one JSON line per grid point")
 parser.add_argument("-e", "--evaluation-measure", choices=["Precision", "SR", "SM", "IFN", "NED", "ICP"], nargs="*",
                     help="For the Precision and the SuccessRate (SR) measures, the ground truth microservices must be in different directories of your project's root directory.\
                         And for the SR measure you should also use the -k option to specify a threshold.")
@@ -34,6 +36,20 @@ parser.add_argument("--use-tf-idf", dest="use_tf_idf", action="store_true",
                     help="Use TF-IDF instead of UniXcoder for semantic similarity.")
 parser.add_argument("--hard-clustering", dest="hard_clustering", action="store_true",
                     help="Use argmax instead of a threshold value to extract microservice from the membership matrix to simulate hard clustering.")
+parser.add_argument("--batch-size", dest="batch_size", type=int, default=16,
+                    help="number of classes UniXcoder encodes at once")
+parser.add_argument("--threads", dest="n_threads", type=int,
+                    help="number of threads UniXcoder uses on the CPU, all cores by default")
+parser.add_argument("--backend", dest="backend", choices=["fp32", "int8"], default="fp32",
+                    help="UniXcoder backend, int8 runs a dynamically quantized model on the CPU (check its accuracy with UniXcoderEncoder.py)")
+parser.add_argument("--nocd-training", dest="nocd_training", choices=training_modes, default="stochastic",
+                    help="NOCD training on sampled edges, on the full-batch loss, or on the full-batch loss for graphs of up to 2000 classes and 50000 edges (auto)")
+parser.add_argument("--nocd-target-loss", dest="nocd_target_loss", type=float,
+                    help="also report the wall-clock time every NOCD model took to first reach this validation loss")
+parser.add_argument("--improved-gcn", dest="improved_gcn", action="store_true",
+                    help="Use NOCD's ImprovedGCN instead of the GCN.")
+parser.add_argument("--workers", dest="n_workers", type=int,
+                    help="number of processes training the models of the n_clusters values, one per core by default. Every finished grid point is appended to the output file, a rerun resumes the sweep from it.")
 
 args = parser.parse_args()
 
@@ -64,10 +80,12 @@ if args.hard_clustering:
         print("\nerror: The --hard-clustering flag and the --threshold flag cannot be used together.")
         exit()
     args.threshold = ["max"]
+elif args.threshold == [None]:
+    parser.print_help()
+    print("\nerror: --threshold or --hard-clustering is required in the experment version")
+    exit()
 
 
-measures = {"Precision": Precision, "SR": SR,
-            "SM": SM, "IFN": IFN, "NED": NED, "ICP": ICP}
 base_dir = path.dirname(path.realpath(__file__))
 
 
@@ -75,50 +93,46 @@ def _listify(x):
     return x if isinstance(x, list) else [x]
 
 
-def merge_java_files(src_dir, dest_file):
-    with open(dest_file, 'w') as outfile:
-        for root, dirs, files in walk(src_dir):
-            for filename in files:
-                if filename.endswith('.java'):
-                    filepath = path.join(root, filename)
-                    with open(filepath) as infile:
-                        lines = infile.readlines()
-                        for line in lines:
-                            if not line.startswith('package'):
-                                outfile.write(line)
-                    outfile.write('\n')
+def run_n_clusters(objects, K, alphas, thresholds):
+    # trains the models of one number of clusters and scores every alpha and threshold value on them
+    features = {name: objects[name] for name in ["semantic", "structural"] if name in objects}
+    memberships = nocd_sweep(objects["adjacency"], features, [K], n_workers=1, training=args.nocd_training,
+                             improved_gcn=args.improved_gcn, target_loss=args.nocd_target_loss)
+    outputs = []
+    for alpha in alphas:
+        print(f"[Mo2oM] n_clusters = {K}, alpha = {alpha}", flush=True)
+        if alpha == 0:
+            membership = memberships[(K, "structural")].copy()
+        elif alpha == 1:
+            membership = memberships[(K, "semantic")].copy()
+        else:
+            membership = alpha * memberships[(K, "semantic")] + (1 - alpha) * memberships[(K, "structural")]
+        layers = process_threshold(thresholds, membership)
+        if not isinstance(thresholds, list):
+            layers = [layers]
+        for threshold, clusters in zip(_listify(thresholds), layers):
+            output = {"n_clusters": K, "alpha": alpha, "threshold": threshold if isinstance(threshold, str) else float(threshold),
+                      "microservices": [[int(_i) for _i in _] for _ in clusters]}
+            output.update(evaluate(output["microservices"], args.evaluation_measure, objects["classes_info"],
+                                   objects.get("true_microservices"), args.k))
+            outputs.append(output)
+    return outputs
 
 
 if args.project_directory:
-    print("merging source files...", end="\t", flush=True)
+    print("scanning microservices...", end="\t", flush=True)
     if args.project_directory.endswith("/"):
         args.project_directory = args.project_directory[:-1]
-    project_dir_name = args.project_directory.split('/')[-1]
     true_ms_dirs = next(walk(args.project_directory))[1]
-    if path.isdir(".data/"):
-        if input("the previous data directory will be deleted; proceed? (Y/n): ") in ["n", "no", "N", "No", "NO"]:
-            print("operation cancelled.")
-            exit()
-        shutil.rmtree(".data/", ignore_errors=True)
-    true_ms_classnames = []
-    libs = path.join(base_dir, "Mo2oM/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "Mono2Multi/JavaParser/lib/json-20230618.jar")
-    makedirs(path.join(base_dir, f".data/{project_dir_name}"), exist_ok=True)
-    for directory in true_ms_dirs:
-        if directory.endswith("/"):
-            directory = directory[:-1]
-        json_path = path.join(base_dir, f".data/{project_dir_name}/{directory}.json")
-        run(['java', '-cp', libs, path.join(base_dir, 'Mo2oM/JavaParser/ClassScanner.java'), path.join(args.project_directory, directory), json_path])
-        with open(json_path, "rt") as classes_file:
-            true_ms_classnames.append(load(classes_file)["classes"])
-
-    args.file_path = path.join(base_dir, f".data/{project_dir_name}/OneFileSource.java")
-    merge_java_files(args.project_directory, args.file_path)
+    ms_classnames = get_extractor().scan_roots(args.project_directory)
+    true_ms_classnames = [ms_classnames[directory] for directory in true_ms_dirs]
+
+    # the parser takes the project directory as is and parses its files in parallel
+    args.file_path = args.project_directory
     print("done!")
 
 print("\n--- Mo2oM ---")
 
-outputs = []
-
 if len(args.n_clusters) == 2:
     n_clusters = list(np.arange(args.n_clusters[0], args.n_clusters[1]+1, 2))
 elif args.n_clusters == [None]:
@@ -133,8 +147,10 @@ if len(args.alpha) == 2:
     alpha = [round(_, 3) for _ in np.arange(args.alpha[0], args.alpha[1]+0.01, 0.05)]
 else:
     alpha = args.alpha[0]
-clusters, classes_info = Mo2oM(args.file_path, n_clusters, thresholds, alpha, args.use_tf_idf)
+classes_info = parse(args.file_path)
 class_names = list(classes_info)
+# the workers map the parsed classes and the similarity matrices from shared memory
+objects = {"classes_info": classes_info}
 if args.project_directory:
     true_microservices = [{-1} for _ in classes_info]
     for i, ms in enumerate(true_ms_classnames):
@@ -142,72 +158,30 @@ if args.project_directory:
             true_microservices[class_names.index(clss)].add(i)
             if -1 in true_microservices[class_names.index(clss)]:
                 true_microservices[class_names.index(clss)].discard(-1)
+    objects["true_microservices"] = true_microservices
 if n_clusters == "Scanniello":
     n_clusters = list(np.arange(2, (len(classes_info)//2)+2, 2))
-for i in range(len(_listify(n_clusters))):
-    for j in range(len(_listify(alpha))):
-        for k in range(len(_listify(thresholds))):
-            cases = [isinstance(n_clusters, int), isinstance(alpha, (int, float)), isinstance(thresholds, (int, str))]
-            match cases:
-                case [True, True, True]:
-                    this_clusters = clusters
-                case [True, True, False]:
-                    this_clusters = clusters[k]
-                case [True, False, True]:
-                    this_clusters = clusters[j]
-                case [False, True, True]:
-                    this_clusters = clusters[i]
-                case [True, False, False]:
-                    this_clusters = clusters[j][k]
-                case [False, True, False]:
-                    this_clusters = clusters[i][k]
-                case [False, False, True]:
-                    this_clusters = clusters[i][j]
-                case [False, False, False]:
-                    this_clusters = clusters[i][j][k]
-            output = {"n_clusters": n_clusters if isinstance(n_clusters, int) else int(_listify(n_clusters)[i]),
-                      "alpha": alpha if isinstance(alpha, (int, float)) else float(_listify(alpha)[j]),
-                      "threshold": thresholds if isinstance(thresholds, str) else float(_listify(thresholds)[k]),
-                      "microservices": [[int(_i) for _i in _] for _ in this_clusters]}
-            if args.evaluation_measure:
-                for measure in args.evaluation_measure:
-                    if measure in ["SM", "IFN", "ICP"]:
-                        output[measure] = measures[measure](output["microservices"], classes_info)
-                    elif measure == "Precision":
-                        output[measure] = measures[measure](output["microservices"], true_microservices)
-                    elif measure == "SR":
-                        for k_sr in args.k:
-                            output[measure+"@"+str(k_sr)] = measures[measure](output["microservices"], true_microservices, k_sr)
-                    else:
-                        output[measure] = measures[measure](output["microservices"])
-            outputs.append(output)
-
-tmp_output_file = "tmp_" + args.output_file.split("/")[-1] 
-with open(tmp_output_file, "w") as output_file:
-    dump(outputs, output_file, indent=2)
-
-in_ms = False
-inn_ms = False
-with (open(tmp_output_file, "rt") as in_f,
-      open(args.output_file, "wt") as out_f):
-    for line in in_f.readlines():
-        if line.endswith("[\n"):
-            if in_ms:
-                inn_ms = True
-            elif "microservices" in line:
-                in_ms = True
-                out_f.write(line[:-1])
-                continue
-        elif line.endswith("],\n") or line.endswith("]\n"):
-            if inn_ms:
-                inn_ms = False
-            else:
-                in_ms = False
-                out_f.write(line.lstrip())
-                continue
-        if in_ms:
-            out_f.write(line.strip())
-        else:
-            out_f.write(line)
-
-run(["rm", tmp_output_file])
+    print(f"[Mo2oM] clustering with sizes from 2 to {(len(classes_info)//2)+2}", flush=True)
+
+structural_similarity_matrix, objects["adjacency"], semantic_similarity_matrix = similarity_matrices(
+    classes_info, args.use_tf_idf, args.batch_size, args.n_threads, args.backend)
+alphas = [float(_) for _ in _listify(alpha)]
+if any(alpha != 0 for alpha in alphas):
+    objects["semantic"] = semantic_similarity_matrix
+if any(alpha != 1 for alpha in alphas):
+    objects["structural"] = sp.csr_matrix(structural_similarity_matrix)
+del structural_similarity_matrix, semantic_similarity_matrix
+
+# one task for every number of clusters, every model it trains is scored with all the alpha and threshold values
+tasks = []
+for K in _listify(n_clusters):
+    points = [{"n_clusters": int(K), "alpha": alpha,
+               "threshold": threshold if isinstance(threshold, str) else float(threshold)}
+              for alpha in alphas for threshold in _listify(thresholds)]
+    tasks.append(((int(K), alphas, thresholds), points))
+config = {"method": "Mo2oM", "source": path.realpath(args.file_path), "use_tf_idf": args.use_tf_idf,
+          "backend": args.backend, "nocd_training": args.nocd_training, "improved_gcn": args.improved_gcn,
+          "evaluation_measure": args.evaluation_measure, "k": args.k}
+# a forked process cannot use CUDA, the models are trained one at a time on the GPU
+run_sweep(tasks, run_n_clusters, args.output_file, config, ["n_clusters", "alpha", "threshold"],
+          objects, 1 if torch.cuda.is_available() else args.n_workers)
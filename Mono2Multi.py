@@ -1,10 +1,10 @@
 from Mono2Multi.main import Mono2Multi
+from Mono2Multi.mds import mds_methods
 from EvaluationMeasures import *
+from JavaExtractor import get_extractor
 from argparse import ArgumentParser
-from os import makedirs, walk, path, pathsep
-from subprocess import run
-from json import load, dump
-import shutil
+from os import walk, path
+from json import dump
 
 
 parser = ArgumentParser(
@@ -30,7 +30,15 @@ parser.add_argument("--n-clusters", dest="n_clusters", type=int,
 parser.add_argument("--threshold", dest="threshold", type=float,
                     help="degree of membership threshold hyperparameter")
 parser.add_argument("--n-execs", dest="n_execs", type=int,
-                    help="(deprecated) the number of times FCM is run to get an average")
+                    help="number of FCM restarts, seeded 42, 43, ..., whose matched memberships are averaged; they run in parallel")
+parser.add_argument("--batch-size", dest="batch_size", type=int, default=16,
+                    help="number of classes UniXcoder encodes at once")
+parser.add_argument("--threads", dest="n_threads", type=int,
+                    help="number of threads UniXcoder uses on the CPU, all cores by default")
+parser.add_argument("--backend", dest="backend", choices=["fp32", "int8"], default="fp32",
+                    help="UniXcoder backend, int8 runs a dynamically quantized model on the CPU (check its accuracy with UniXcoderEncoder.py)")
+parser.add_argument("--mds", dest="mds", choices=mds_methods, default="classical",
+                    help="MDS embedding FCM clusters: classical (Torgerson) MDS, landmark MDS for large projects, or SMACOF started from the classical embedding")
 
 args = parser.parse_args()
 
@@ -55,44 +63,16 @@ measures = {"Precision": Precision, "SR": SR,
 base_dir = path.dirname(path.realpath(__file__))
 
 
-def merge_java_files(src_dir, dest_file):
-    with open(dest_file, 'w') as outfile:
-        for root, dirs, files in walk(src_dir):
-            for filename in files:
-                if filename.endswith('.java'):
-                    filepath = path.join(root, filename)
-                    with open(filepath) as infile:
-                        lines = infile.readlines()
-                        for line in lines:
-                            if not line.startswith('package'):
-                                outfile.write(line)
-                    outfile.write('\n')
-
-
 if args.project_directory:
-    print("merging source files...", end="\t", flush=True)
+    print("scanning microservices...", end="\t", flush=True)
     if args.project_directory.endswith("/"):
         args.project_directory = args.project_directory[:-1]
-    project_dir_name = args.project_directory.split('/')[-1]
     true_ms_dirs = next(walk(args.project_directory))[1]
-    if path.isdir(".data/"):
-        if input("the previous data directory will be deleted; proceed? (Y/n): ") in ["n", "no", "N", "No", "NO"]:
-            print("operation cancelled.")
-            exit()
-        shutil.rmtree(".data/", ignore_errors=True)
-    true_ms_classnames = []
-    libs = path.join(base_dir, "Mono2Multi/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "Mono2Multi/JavaParser/lib/json-20230618.jar")
-    makedirs(path.join(base_dir, f".data/{project_dir_name}"), exist_ok=True)
-    for directory in true_ms_dirs:
-        if directory.endswith("/"):
-            directory = directory[:-1]
-        json_path = path.join(base_dir, f".data/{project_dir_name}/{directory}.json")
-        run(['java', '-cp', libs, path.join(base_dir, 'Mono2Multi/JavaParser/ClassScanner.java'), path.join(args.project_directory, directory), json_path])
-        with open(json_path, "rt") as classes_file:
-            true_ms_classnames.append(load(classes_file)["classes"])
-
-    args.file_path = path.join(base_dir, f".data/{project_dir_name}/OneFileSource.java")
-    merge_java_files(args.project_directory, args.file_path)
+    ms_classnames = get_extractor().scan_roots(args.project_directory)
+    true_ms_classnames = [ms_classnames[directory] for directory in true_ms_dirs]
+
+    # the parser takes the project directory as is and parses its files in parallel
+    args.file_path = args.project_directory
     print("done!")
 
 if args.file_path:
@@ -100,9 +80,12 @@ if args.file_path:
     if args.alpha == None:
         args.alpha = float(input("alpha: "))
     if args.n_execs == None:
-        clusters, classes_info = Mono2Multi(args.file_path, args.alpha, args.n_clusters, args.threshold)
+        clusters, classes_info = Mono2Multi(args.file_path, args.alpha, args.n_clusters, args.threshold,
+                                            batch_size=args.batch_size, n_threads=args.n_threads, backend=args.backend,
+                                            mds=args.mds)
     else:
-        clusters, classes_info = Mono2Multi(args.file_path, args.alpha, args.n_clusters, args.threshold, args.n_execs)
+        clusters, classes_info = Mono2Multi(args.file_path, args.alpha, args.n_clusters, args.threshold, args.n_execs,
+                                            args.batch_size, args.n_threads, args.backend, args.mds)
 
     class_names = list(classes_info.keys())
     if args.project_directory:
@@ -1,17 +1,73 @@
+from concurrent.futures import ProcessPoolExecutor
+from multiprocessing import get_context
+from os import cpu_count
 import numpy as np
-from sklearn import manifold
 import skfuzzy as fuzz
 import matplotlib.pyplot as plt
+from Mono2Multi.mds import embed
 
 
-def fcm(class_similarity_matrix, n_clusters, threshold, n_execs):
-    mds = manifold.MDS(
-        max_iter=10000000,
-        eps=1e-90,
-        dissimilarity="precomputed",
-        normalized_stress="auto",
-    )
-    pos = mds.fit(class_similarity_matrix).embedding_
+# a restart stops once the Frobenius norm of the change of the whole (clusters x classes) membership matrix between
+# two iterations is below fcm_error (skfuzzy's cmeans), so 1e-6 bounds every single change and keeps the root mean
+# square change below 1e-6 / sqrt(clusters * classes)
+fcm_error = 1e-6
+fcm_max_iter = 10000
+
+
+def _cmeans(data, n_clusters, seed):
+    cntr, u, u0, d, jm, p, fpc = fuzz.cluster.cmeans(
+        data, n_clusters, 2, error=fcm_error, maxiter=fcm_max_iter, seed=seed)
+    return cntr, u
+
+
+def fcm_memberships(data, n_clusters, n_execs=1, seed=42, n_workers=None):
+    # the memberships (clusters x classes) of the columns of data averaged over n_execs restarts seeded with seed,
+    # seed+1, ..., run in parallel, one process per core by default. every restart's clusters are matched to the
+    # first one's by their centers before averaging, the same cluster may have another index in every restart
+    from scipy.optimize import linear_sum_assignment
+    from scipy.spatial.distance import cdist
+
+    seeds = range(seed, seed+n_execs)
+    n_workers = min(n_workers or cpu_count() or 1, n_execs)
+    print("[FuzzyCMeans] 0%", end="", flush=True)
+    if n_workers > 1:
+        pool = ProcessPoolExecutor(n_workers, mp_context=get_context("fork"))
+        restarts = pool.map(_cmeans, [data]*n_execs, [n_clusters]*n_execs, seeds)
+    else:
+        pool = None
+        restarts = (_cmeans(data, n_clusters, restart_seed) for restart_seed in seeds)
+    try:
+        for i, (cntr, u) in enumerate(restarts):
+            if i == 0:
+                first_cntr, total_u = cntr, u.copy()
+            else:
+                _, order = linear_sum_assignment(cdist(first_cntr, cntr))
+                total_u += u[order]
+            print(f"\r[FuzzyCMeans] {int(100*(i+1)/n_execs)}%", end="", flush=True)
+    finally:
+        if pool:
+            pool.shutdown()
+    print("\r[FuzzyCMeans] 100%", flush=True)
+    return total_u / n_execs
+
+
+def threshold_layers(memberships, thresholds):
+    # assigned[t, class, cluster]: the class belongs to the cluster at the t-th threshold, for all thresholds at once
+    return memberships.T[None, :, :] >= np.asarray(thresholds, dtype=float)[:, None, None]
+
+
+def layer_clusters(assigned):
+    # the clusters of every class in one threshold layer of threshold_layers(), {-1} for a class in none
+    classes, clusters = np.nonzero(assigned)
+    class_clusters = np.split(clusters, np.searchsorted(classes, np.arange(1, assigned.shape[0])))
+    return [set(cluster_ids.tolist()) or {-1} for cluster_ids in class_clusters]
+
+
+def fcm(class_similarity_matrix, n_clusters, threshold, n_execs, embedding=None, mds="classical", n_workers=None):
+    # embedding: the 2-D MDS embedding of class_similarity_matrix from embed(), computed with the mds method when
+    # it is not given; the embedding depends only on the matrix, pass it to cluster it with several n_clusters.
+    # n_workers: processes running the n_execs FCM restarts, one per core by default
+    pos = embed(class_similarity_matrix, mds) if embedding is None else embedding
     alldata = np.vstack((pos[:, 0], pos[:, 1]))
 
     if n_clusters == None:
@@ -23,44 +79,18 @@ def fcm(class_similarity_matrix, n_clusters, threshold, n_execs):
         n_clusters = int(input("\nnumber of clusters: "))
         print()
 
-    print("[FuzzyCMeans] 0%", end="", flush=True)
-    cntr, total_u, u0, d, jm, p, fpc = fuzz.cluster.cmeans(
-        alldata, n_clusters, 2, error=1e-90, maxiter=100000, seed=42)
-    print(f"\r[FuzzyCMeans] {int(100*(1)/n_execs)}%", end="", flush=True)
-    for i in range(n_execs-1):
-        cntr, u, u0, d, jm, p, fpc = fuzz.cluster.cmeans(
-            alldata, n_clusters, 2, error=1e-90, maxiter=100000, init=None)
-        total_u += u
-        print(f"\r[FuzzyCMeans] {int(100*(i+2)/n_execs)}%", end="", flush=True)
-    memberships = total_u/n_execs
-    print("\r[FuzzyCMeans] 100%", flush=True)
+    memberships = fcm_memberships(alldata, n_clusters, n_execs, n_workers=n_workers)
 
     if threshold == None:
         fig, axs = plt.subplots(n_clusters, sharex='all')
         for i, cluster in enumerate(memberships):
-            axs[i].bar(range(len(class_similarity_matrix)), cluster)
+            axs[i].bar(range(len(pos)), cluster)
 
-        plt.xticks(range(len(class_similarity_matrix)))
+        plt.xticks(range(len(pos)))
         fig.show()
         threshold = float(input("degree of membership threshold: "))
     elif not (isinstance(threshold, int) or isinstance(threshold, float)):
-        layers = []
-        for threshold_i in threshold:
-            print(f"[Mono2Multi] threshold = {threshold_i}")
-            clusters = [{-1} for _ in memberships[0]]
-            for cluster_i in range(len(memberships)):
-                for class_i in range(len(memberships[cluster_i])):
-                    if memberships[cluster_i][class_i] >= threshold_i:
-                        clusters[class_i].discard(-1)
-                        clusters[class_i].add(cluster_i)
-            layers.append(clusters)
-        return layers
-
-    clusters = [{-1} for _ in memberships[0]]
-    for cluster_i in range(len(memberships)):
-        for class_i in range(len(memberships[cluster_i])):
-            if memberships[cluster_i][class_i] >= threshold:
-                clusters[class_i].discard(-1)
-                clusters[class_i].add(cluster_i)
-
-    return clusters
+        print(f"[Mono2Multi] {len(threshold)} thresholds from {threshold[0]} to {threshold[-1]}")
+        return [layer_clusters(assigned) for assigned in threshold_layers(memberships, threshold)]
+
+    return layer_clusters(threshold_layers(memberships, [threshold])[0])
@@ -1,36 +1,33 @@
-from os import path, pathsep
-from subprocess import run
+from os import path
 from json import load
+from JavaExtractor import get_extractor, cache_dir
 from Mono2Multi.similarity_analysis import class_similarity
 from Mono2Multi.clustering import fcm
+from Mono2Multi.mds import embed
 import numpy as np
 
 
-def Mono2Multi(source_code_path, alpha, n_clusters=None, threshold=None, n_fcm_execs=1):
+def parse(source_code_path, json_name="classes.json"):
     # parse the source code and get classes, methods, etc.
     print("\n[Mono2Multi] parsing the code...", end=" ", flush=True)
     base_dir = path.dirname(path.realpath(__file__))
-    libs = path.join(base_dir, "JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "JavaParser/lib/json-20230618.jar")
-    json_path = path.join(base_dir, f"JavaParser/classes_{alpha}.json")
-    run(['java', '-cp', libs, path.join(base_dir, 'JavaParser/Parser.java'), source_code_path, json_path]) 
+    json_path = path.join(base_dir, json_name)
+    # UniXcoder reads at most 512 tokens of each class source, far less than 10000 characters
+    get_extractor().parse(source_code_path, json_path, cache_dir=cache_dir,
+                          max_source_length=10000)
     with open(json_path, "rt") as classes_file:
         classes_info = load(classes_file)
     print("done!")
+    return classes_info
 
-    # finding class names for each method call
-    print("[Mono2Multi] analyzing method calls...", end=" ", flush=True)
-    for clss in classes_info:
-        for call in classes_info[clss]["method_calls"]:
-            for other_clss in classes_info:
-                if call["method_name"] in classes_info[other_clss]["methods"]:
-                    call["class_name"] = other_clss
-                    if clss == other_clss:
-                        break
-    print("done!")
+
+def Mono2Multi(source_code_path, alpha, n_clusters=None, threshold=None, n_fcm_execs=1, batch_size=16, n_threads=None,
+               backend="fp32", mds="classical"):
+    classes_info = parse(source_code_path, f"classes_{alpha}.json")
 
     # get class similarity metrix to feed to FCM
     print("[Mono2Multi] building class similarity matrix", flush=True)
-    class_similarity_matrix = class_similarity(alpha, classes_info)
+    class_similarity_matrix = class_similarity(alpha, classes_info, batch_size, n_threads, backend)
     print("[Mono2Multi] class similarity matrix built successfully!", flush=True)
 
     # --- DEBUG SECTION
@@ -47,8 +44,10 @@ def Mono2Multi(source_code_path, alpha, n_clusters=None, threshold=None, n_fcm_e
 
     # --- DEBUG SECTION
 
+    # the embedding FCM clusters is the same for every number of clusters
+    embedding = embed(class_similarity_matrix, mds)
     if isinstance(n_clusters, int) or n_clusters is None:
-            return fcm(class_similarity_matrix, n_clusters, threshold, n_fcm_execs), classes_info
+            return fcm(class_similarity_matrix, n_clusters, threshold, n_fcm_execs, embedding), classes_info
     elif isinstance(n_clusters, str) and n_clusters == "Scanniello":
         len_classes = len(classes_info)
         n_clusters = np.arange(2, (len_classes//2)+2, 2)
@@ -56,5 +55,5 @@ def Mono2Multi(source_code_path, alpha, n_clusters=None, threshold=None, n_fcm_e
     layers = []
     for i in range(len(n_clusters)):
         print(f"[Mono2Multi] n_clusters = {n_clusters[i]}", flush=True)
-        layers.append(fcm(class_similarity_matrix, n_clusters[i], threshold, n_fcm_execs))
+        layers.append(fcm(class_similarity_matrix, n_clusters[i], threshold, n_fcm_execs, embedding))
     return layers, classes_info
@@ -0,0 +1,93 @@
+from time import perf_counter
+import numpy as np
+
+
+# classical: Torgerson's MDS of all the classes, landmark: classical MDS of a few classes with the others placed
+# by their distances to them, smacof: SMACOF started from the classical embedding
+mds_methods = ["classical", "landmark", "smacof"]
+# eigsh instead of a dense eigendecomposition above this many points
+dense_eigh_max_points = 500
+
+
+def _top_eigenpairs(B, n_components):
+    # the n_components largest eigenvalues of the symmetric matrix B and their eigenvectors, largest first.
+    # eigenvector signs are fixed so the largest component is positive, the embedding is the same on every run
+    n = B.shape[0]
+    if n <= dense_eigh_max_points or n_components >= n - 1:
+        from scipy.linalg import eigh
+        eigenvalues, eigenvectors = eigh(B, subset_by_index=[max(0, n-n_components), n-1])
+    else:
+        from scipy.sparse.linalg import eigsh
+        v0 = np.random.RandomState(0).uniform(-1, 1, n)
+        eigenvalues, eigenvectors = eigsh(B, k=n_components, which="LA", v0=v0)
+    order = np.argsort(eigenvalues)[::-1]
+    eigenvalues, eigenvectors = eigenvalues[order], eigenvectors[:, order]
+    signs = np.sign(eigenvectors[np.abs(eigenvectors).argmax(axis=0), range(eigenvectors.shape[1])])
+    eigenvectors *= np.where(signs == 0, 1, signs)
+    # fewer points than components leave the missing coordinates 0
+    missing = n_components - len(eigenvalues)
+    if missing > 0:
+        eigenvalues = np.concatenate([eigenvalues, np.zeros(missing)])
+        eigenvectors = np.hstack([eigenvectors, np.zeros((n, missing))])
+    # negative eigenvalues of a non-euclidean distance matrix give no coordinate
+    return np.maximum(eigenvalues, 0), eigenvectors
+
+
+def classical_mds(distance_matrix, n_components=2):
+    # the top eigenvectors of the double-centered squared distances, scaled by the root of their eigenvalues
+    B = np.square(distance_matrix, dtype=np.float64)
+    B -= B.mean(axis=0)
+    B -= B.mean(axis=1)[:, None]
+    B *= -0.5
+    eigenvalues, eigenvectors = _top_eigenpairs(B, n_components)
+    return eigenvectors * np.sqrt(eigenvalues)
+
+
+def landmark_mds(distance_matrix, n_landmarks=300, n_components=2):
+    # classical MDS of n_landmarks classes spread by farthest point sampling from the first class; every class is
+    # placed from its squared distances to the landmarks (de Silva and Tenenbaum's triangulation)
+    n = distance_matrix.shape[0]
+    if n <= n_landmarks:
+        return classical_mds(distance_matrix, n_components)
+    landmarks = [0]
+    nearest = np.array(distance_matrix[0], dtype=np.float64)
+    for _ in range(n_landmarks-1):
+        landmarks.append(int(nearest.argmax()))
+        np.minimum(nearest, distance_matrix[landmarks[-1]], out=nearest)
+    squared = np.square(distance_matrix[:, landmarks], dtype=np.float64)
+    B = squared[landmarks].copy()
+    mean_squared = B.mean(axis=0)
+    B -= mean_squared
+    B -= B.mean(axis=1)[:, None]
+    B *= -0.5
+    eigenvalues, eigenvectors = _top_eigenpairs(B, n_components)
+    pseudo_inverse = np.divide(eigenvectors, np.sqrt(eigenvalues), out=np.zeros_like(eigenvectors),
+                               where=eigenvalues != 0)
+    return -0.5 * (squared - mean_squared) @ pseudo_inverse
+
+
+def stress(distance_matrix, embedding):
+    # Kruskal's stress-1 of the embedding: the root of the sum of the squared differences between the embedded and
+    # the given distances over the sum of the squared given distances, 0 is a perfect fit
+    from scipy.spatial.distance import pdist, squareform
+    distances = squareform(np.asarray(distance_matrix, dtype=np.float64), checks=False)
+    total = np.dot(distances, distances)
+    distances -= pdist(embedding)
+    return float(np.sqrt(np.dot(distances, distances) / total)) if total else 0.0
+
+
+def embed(distance_matrix, method="classical", n_components=2, n_landmarks=300, smacof_max_iter=3000,
+          smacof_eps=1e-6):
+    # the n_components-D embedding of the classes FCM clusters, computed once for every distance matrix
+    start = perf_counter()
+    if method == "landmark":
+        embedding = landmark_mds(distance_matrix, n_landmarks, n_components)
+    else:
+        embedding = classical_mds(distance_matrix, n_components)
+    if method == "smacof":
+        from sklearn.manifold import smacof
+        embedding, _ = smacof(distance_matrix, metric=True, n_components=n_components, init=embedding, n_init=1,
+                              max_iter=smacof_max_iter, eps=smacof_eps, normalized_stress=False)
+    print(f"[MDS] {method} embedding of {len(embedding)} classes in {perf_counter()-start:.2f}s, "
+          f"stress-1 {stress(distance_matrix, embedding):.4f}", flush=True)
+    return embedding
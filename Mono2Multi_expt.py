@@ -1,24 +1,27 @@
-from Mono2Multi.main import Mono2Multi
+from Mono2Multi.main import parse
+from Mono2Multi.similarity_analysis import semantic_similarity, combined_similarity
+from Mono2Multi.clustering import fcm
+from Mono2Multi.mds import embed, mds_methods
+from StructuralSimilarity import structural_similarity
 from EvaluationMeasures import *
+from JavaExtractor import get_extractor
+from SweepRunner import run_sweep
 from argparse import ArgumentParser
-from os import makedirs, walk, path, pathsep
-from subprocess import run
-from json import load, dump
+from os import cpu_count, walk, path
 import numpy as np
-import shutil
 
 
 parser = ArgumentParser(
     prog='python Mono2Multi_expt.py',
     description='Experiment versoin of the Mono2Multi tool.',
-    epilog='example usage: python Mono2Multi_expt.py -f test_projects/JPetStore/OneFileSource.java --alpha 1 --n-clusters 3 --threshold 0.1 0.7 -e ICP NED -o output.json')
+    epilog='example usage: python Mono2Multi_expt.py -f test_projects/JPetStore/OneFileSource.java --alpha 1 --n-clusters 3 --threshold 0.1 0.7 -e ICP NED -o output.jsonl')
 
 parser.add_argument("-f", "--file", dest="file_path",
                     help="path to the java source code file (use this option if your whole monolithic program is in one file)")
 parser.add_argument("-p", "--project", dest="project_directory",
                     help="path to the java project directory, (use this option if your monolithic program is in multiple files) this option overrides --file")
 parser.add_argument("-o", "--output-file", dest="output_file",
-                    help="output file name to save results in")
+                    help="output file name to save results in, one JSON line per grid point")
 parser.add_argument("-e", "--evaluation-measure", choices=["Precision", "SR", "SM", "IFN", "NED", "ICP"], nargs="*",
                     help="For the Precision and the SuccessRate (SR) measures, the ground truth microservices must be in different directories of your project's root directory.\
                         And for the SR measure you should also use the -k option to specify a threshold.")
@@ -31,9 +34,19 @@ parser.add_argument("--n-clusters", dest="n_clusters", type=int, nargs="*", defa
 parser.add_argument("--threshold", dest="threshold", type=float, nargs="*", default=[None],
                     help="degree of membership threshold hyperparameter. Enter two values to run the method on an interval of threshold values.")
 parser.add_argument("--multiprocessing", dest="use_multiprocessing", action="store_true",
-                    help="use multiprocessing to reduce runtime when running the model with different values of alpha.")
+                    help="(deprecated) the alpha and n_clusters values always run in parallel, see --workers")
+parser.add_argument("--workers", dest="n_workers", type=int,
+                    help="number of processes running the alpha and n_clusters values, one per core by default. Every finished grid point is appended to the output file, a rerun resumes the sweep from it.")
 parser.add_argument("--n-execs", dest="n_execs", type=int,
-                    help="(deprecated) the number of times FCM is run to get an average")
+                    help="number of FCM restarts, seeded 42, 43, ..., whose matched memberships are averaged; they run in parallel")
+parser.add_argument("--batch-size", dest="batch_size", type=int, default=16,
+                    help="number of classes UniXcoder encodes at once")
+parser.add_argument("--threads", dest="n_threads", type=int,
+                    help="number of threads UniXcoder uses on the CPU, all cores by default")
+parser.add_argument("--backend", dest="backend", choices=["fp32", "int8"], default="fp32",
+                    help="UniXcoder backend, int8 runs a dynamically quantized model on the CPU (check its accuracy with UniXcoderEncoder.py)")
+parser.add_argument("--mds", dest="mds", choices=mds_methods, default="classical",
+                    help="MDS embedding FCM clusters: classical (Torgerson) MDS, landmark MDS for large projects, or SMACOF started from the classical embedding")
 
 args = parser.parse_args()
 
@@ -58,8 +71,11 @@ if args.evaluation_measure:
         print("\nerror: For the Precision and the SuccessRate (SR) measures, you should use the --project flag and the ground truth microservices must be in different directories of your project's root directory.")
         exit()
 
-measures = {"Precision": Precision, "SR": SR,
-            "SM": SM, "IFN": IFN, "NED": NED, "ICP": ICP}
+if args.threshold == [None]:
+    parser.print_help()
+    print("\nerror: --threshold is required in the experment version")
+    exit()
+
 base_dir = path.dirname(path.realpath(__file__))
 
 
@@ -67,89 +83,34 @@ def _listify(x):
     return x if isinstance(x, list) else [x]
 
 
-def merge_java_files(src_dir, dest_file):
-    with open(dest_file, 'w') as outfile:
-        for root, dirs, files in walk(src_dir):
-            for filename in files:
-                if filename.endswith('.java'):
-                    filepath = path.join(root, filename)
-                    with open(filepath) as infile:
-                        lines = infile.readlines()
-                        for line in lines:
-                            if not line.startswith('package'):
-                                outfile.write(line)
-                    outfile.write('\n')
-
-
-def run_with_alpha(all_args):
-    alpha, file_path, n_clusters, thresholds, n_execs, project_directory = [*all_args]
-    print(f"alpha = {alpha}", flush=True)
+def run_alpha_n_clusters(objects, alpha, alpha_index, n_clusters, thresholds, n_execs, fcm_workers):
+    # clusters the classes with one alpha and number of clusters and scores every threshold value
+    print(f"alpha = {alpha}, n_clusters = {n_clusters}", flush=True)
+    layers = fcm(None, n_clusters, thresholds, n_execs, objects["embeddings"][alpha_index], n_workers=fcm_workers)
+    if not isinstance(thresholds, list):
+        layers = [layers]
     outputs = []
-    clusters, classes_info = Mono2Multi(file_path, alpha, n_clusters, thresholds, n_execs)
-    class_names = list(classes_info.keys())
-    if project_directory:
-        true_microservices = [{-1} for _ in classes_info]
-        for i, ms in enumerate(true_ms_classnames):
-            for clss in ms:
-                true_microservices[class_names.index(clss)].add(i)
-                if -1 in true_microservices[class_names.index(clss)]:
-                    true_microservices[class_names.index(clss)].discard(-1)
-    if n_clusters == "Scanniello":
-        n_clusters = list(np.arange(2, (len(classes_info)//2)+2, 2))
-
-    for i in range(len(_listify(n_clusters))):
-        for j in range(len(_listify(thresholds))):
-            if isinstance(n_clusters, int) and isinstance(thresholds, int):
-                this_clusters = clusters
-            elif isinstance(n_clusters, int):
-                this_clusters = clusters[j]
-            elif isinstance(thresholds, int):
-                this_clusters = clusters[i]
-            else:
-                this_clusters = clusters[i][j]
-            output = {"alpha": float(alpha),
-                        "n_clusters": int(_listify(n_clusters)[i]),
-                        "threshold": float(_listify(thresholds)[j]),
-                        "microservices": [list(_) for _ in this_clusters]}
-            if args.evaluation_measure:
-                for measure in args.evaluation_measure:
-                    if measure in ["SM", "IFN", "ICP"]:
-                        output[measure] = measures[measure](this_clusters, classes_info)
-                    elif measure == "Precision":
-                        output[measure] = measures[measure](this_clusters, true_microservices)
-                    elif measure == "SR":
-                        for k in args.k:
-                            output[measure+"@"+str(k)] = measures[measure](this_clusters, true_microservices, k)
-                    else:
-                        output[measure] = measures[measure](this_clusters)
-            outputs.append(output)
+    for threshold, clusters in zip(_listify(thresholds), layers):
+        output = {"alpha": alpha,
+                  "n_clusters": n_clusters,
+                  "threshold": float(threshold),
+                  "microservices": [list(_) for _ in clusters]}
+        output.update(evaluate(clusters, args.evaluation_measure, objects["classes_info"],
+                               objects.get("true_microservices"), args.k))
+        outputs.append(output)
     return outputs
 
 
 if args.project_directory:
-    print("merging source files...", end="\t", flush=True)
+    print("scanning microservices...", end="\t", flush=True)
     if args.project_directory.endswith("/"):
         args.project_directory = args.project_directory[:-1]
-    project_dir_name = args.project_directory.split('/')[-1]
     true_ms_dirs = next(walk(args.project_directory))[1]
-    if path.isdir(".data/"):
-        if input("the previous data directory will be deleted; proceed? (Y/n): ") in ["n", "no", "N", "No", "NO"]:
-            print("operation cancelled.")
-            exit()
-        shutil.rmtree(".data/", ignore_errors=True)
-    true_ms_classnames = []
-    libs = path.join(base_dir, "Mono2Multi/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+pathsep+path.join(base_dir, "Mono2Multi/JavaParser/lib/json-20230618.jar")
-    makedirs(path.join(base_dir, f".data/{project_dir_name}"), exist_ok=True)
-    for directory in true_ms_dirs:
-        if directory.endswith("/"):
-            directory = directory[:-1]
-        json_path = path.join(base_dir, f".data/{project_dir_name}/{directory}.json")
-        run(['java', '-cp', libs, path.join(base_dir, 'Mono2Multi/JavaParser/ClassScanner.java'), path.join(args.project_directory, directory), json_path])
-        with open(json_path, "rt") as classes_file:
-            true_ms_classnames.append(load(classes_file)["classes"])
-
-    args.file_path = path.join(base_dir, f".data/{project_dir_name}/OneFileSource.java")
-    merge_java_files(args.project_directory, args.file_path)
+    ms_classnames = get_extractor().scan_roots(args.project_directory)
+    true_ms_classnames = [ms_classnames[directory] for directory in true_ms_dirs]
+
+    # the parser takes the project directory as is and parses its files in parallel
+    args.file_path = args.project_directory
     print("done!")
 
 if args.file_path:
@@ -173,45 +134,51 @@ if args.file_path:
     else:
         thresholds = args.threshold[0]
 
-    if args.use_multiprocessing:
-        print("Using multiprocessing. Don't get confused by unordered logs.")
-        from concurrent.futures import ProcessPoolExecutor as Pool
-        inputs = [(alpha, args.file_path, n_clusters, thresholds, args.n_execs, args.project_directory) for alpha in alphas]
-        with Pool() as pool:
-            output_lists = pool.map(run_with_alpha, inputs)
-    else:
-        output_lists = []
-        for alpha in alphas:
-            output_lists.append(run_with_alpha(alpha, args.file_path, n_clusters, thresholds, args.n_execs, args.project_directory))
-    outputs = []
-    for l in output_lists:
-        for output in l:
-            outputs.append(output)
-    with open("tmp_"+args.output_file, "w") as output_file:
-        dump(outputs, output_file, indent=2)
-
-    in_ms = False
-    inn_ms = False
-    with (open("tmp_"+args.output_file, "rt") as in_f,
-        open(args.output_file, "wt") as out_f):
-        for line in in_f.readlines():
-            if line.endswith("[\n"):
-                if in_ms:
-                    inn_ms = True
-                elif "microservices" in line:
-                    in_ms = True
-                    out_f.write(line[:-1])
-                    continue
-            elif line.endswith("],\n") or line.endswith("]\n"):
-                if inn_ms:
-                    inn_ms = False
-                else:
-                    in_ms = False
-                    out_f.write(line.lstrip())
-                    continue
-            if in_ms:
-                out_f.write(line.strip())
-            else:
-                out_f.write(line)
-
-    run(["rm", "tmp_"+args.output_file])
+    classes_info = parse(args.file_path)
+    class_names = list(classes_info.keys())
+    # the workers map the parsed classes and the similarity matrices from shared memory
+    objects = {"classes_info": classes_info}
+    if args.project_directory:
+        true_microservices = [{-1} for _ in classes_info]
+        for i, ms in enumerate(true_ms_classnames):
+            for clss in ms:
+                true_microservices[class_names.index(clss)].add(i)
+                if -1 in true_microservices[class_names.index(clss)]:
+                    true_microservices[class_names.index(clss)].discard(-1)
+        objects["true_microservices"] = true_microservices
+    if n_clusters == "Scanniello":
+        n_clusters = list(np.arange(2, (len(classes_info)//2)+2, 2))
+        print(f"[Mono2Multi] clustering with sizes from 2 to {(len(classes_info)//2)+2}", flush=True)
+
+    # the similarity matrices do not depend on alpha, they are built once for all its values
+    print("[Mono2Multi] building class similarity matrices", flush=True)
+    alphas = [float(_) for _ in alphas]
+    structural_similarity_matrix = structural_similarity(classes_info)
+    semantic_similarity_matrix = None
+    if any(alpha != 1 for alpha in alphas):
+        semantic_similarity_matrix = semantic_similarity(classes_info, args.batch_size, args.n_threads, args.backend)
+    print("[Mono2Multi] class similarity matrices built successfully!", flush=True)
+    # FCM clusters the embedding of an alpha's matrix with every number of clusters, it is computed once
+    embeddings = []
+    for alpha in alphas:
+        print(f"alpha = {alpha}", flush=True)
+        embeddings.append(embed(combined_similarity(alpha, structural_similarity_matrix, semantic_similarity_matrix),
+                                args.mds))
+    objects["embeddings"] = np.stack(embeddings)
+    del structural_similarity_matrix, semantic_similarity_matrix, embeddings
+
+    # one task for every alpha and number of clusters, FCM memberships are scored with all the threshold values;
+    # the FCM restarts of a task run in parallel on the cores left over by the tasks running at once
+    n_tasks = len(alphas) * len(_listify(n_clusters))
+    fcm_workers = max(1, (cpu_count() or 1) // min(args.n_workers or cpu_count() or 1, n_tasks))
+    tasks = []
+    for alpha_index, alpha in enumerate(alphas):
+        for K in _listify(n_clusters):
+            points = [{"alpha": alpha, "n_clusters": int(K), "threshold": float(threshold)}
+                      for threshold in _listify(thresholds)]
+            tasks.append(((alpha, alpha_index, int(K), thresholds, args.n_execs, fcm_workers), points))
+    config = {"method": "Mono2Multi", "source": path.realpath(args.project_directory or args.file_path),
+              "n_execs": args.n_execs, "backend": args.backend, "mds": args.mds,
+              "evaluation_measure": args.evaluation_measure, "k": args.k}
+    run_sweep(tasks, run_alpha_n_clusters, args.output_file, config,
+              ["alpha", "n_clusters", "threshold"], objects, args.n_workers)
@@ -0,0 +1,32 @@
+import numpy as np
+import scipy.sparse as sp
+
+
+def call_matrix(classes_info):
+    # calls[i, j]: the number of method calls of the i-th class to the j-th class, in classes_info order
+    index = {clss: i for i, clss in enumerate(classes_info)}
+    rows, cols = [], []
+    for i, clss in enumerate(classes_info):
+        for call in classes_info[clss]["method_calls"]:
+            j = index.get(call["class_name"])
+            if j is not None:
+                rows.append(i)
+                cols.append(j)
+    n = len(classes_info)
+    # duplicate (i, j) entries are summed into the call count
+    return sp.csr_matrix((np.ones(len(rows)), (rows, cols)), shape=(n, n))
+
+
+def structural_similarity(classes_info):
+    # sim_str(ci, cj) = 1/2 * (calls(ci, cj)/calls_in(cj) + calls(cj, ci)/calls_in(ci)), or only the term whose
+    # calls_in is not 0 when the other one is, for i < j; the lower triangle and the diagonal are 0
+    calls = call_matrix(classes_info).tocoo()
+    calls_in = np.asarray(calls.sum(axis=0)).ravel()
+    # calls(ci, cj) is 0 whenever calls_in(cj) is, so every stored call count has a non-zero calls_in to divide by
+    ratios = sp.csr_matrix((calls.data / calls_in[calls.col], (calls.row, calls.col)), shape=calls.shape)
+    pairs = (ratios + ratios.T).tocoo()
+    called = calls_in != 0
+    pairs.data = np.where(called[pairs.row] & called[pairs.col], (1 / 2) * pairs.data, pairs.data)
+    structural_similarity_matrix = sp.triu(pairs, k=1).toarray()
+    print(f"[StructuralSimilarity] {len(classes_info)} classes, {calls.nnz} calling pairs", flush=True)
+    return structural_similarity_matrix
@@ -0,0 +1,167 @@
+from concurrent.futures import ProcessPoolExecutor, as_completed
+from multiprocessing import get_context
+from multiprocessing.shared_memory import SharedMemory
+from os import cpu_count, fsync, path
+from json import dumps, loads
+from time import perf_counter
+import pickle
+import sys
+import numpy as np
+import scipy.sparse as sp
+
+
+def _point_key(record, parameters):
+    return tuple(record[parameter] for parameter in parameters)
+
+
+class ResultsLog:
+    # the results file of a sweep, append-only JSON lines: the sweep configuration, then one compact record per
+    # scored grid point (read by experimental_results/results_reader.py).
+    # an existing log of the same configuration is resumed, its grid points are not run again
+    def __init__(self, log_path, config, parameters):
+        self.log_path = log_path
+        self.parameters = parameters
+        # the grid points already scored, their records are only on disk
+        self.done_points = set()
+        if path.isfile(log_path):
+            self._resume(config)
+        else:
+            with open(log_path, "wt", encoding="utf-8") as log_file:
+                log_file.write(dumps({"config": config})+"\n")
+
+    def _resume(self, config):
+        log_path = self.log_path
+        with open(log_path, "rb") as log_file:
+            content = log_file.read()
+        # a run killed while writing leaves a partial last line, it is cut off so the next record starts a new line
+        end = content.rfind(b"\n")+1
+        if end < len(content):
+            with open(log_path, "r+b") as log_file:
+                log_file.truncate(end)
+        lines = content[:end].decode("utf-8").splitlines()
+        try:
+            header = loads(lines[0]) if lines else None
+        except ValueError:
+            header = None
+        # the results of an earlier version are one JSON array, they are not resumed either
+        if not isinstance(header, dict) or header.get("config") != config:
+            raise RuntimeError(f"{log_path} holds the results of another sweep, remove it to start over")
+        for line in lines[1:]:
+            self.done_points.add(_point_key(loads(line), self.parameters))
+
+    def done(self, points):
+        return all(_point_key(point, self.parameters) in self.done_points for point in points)
+
+    def append(self, records):
+        # all the records of a task in one write, on disk before the task counts as done
+        with open(self.log_path, "at", encoding="utf-8") as log_file:
+            log_file.write("".join(dumps(record)+"\n" for record in records))
+            log_file.flush()
+            fsync(log_file.fileno())
+        self.done_points.update(_point_key(record, self.parameters) for record in records)
+
+
+class SharedObjects:
+    # numpy arrays and csr matrices are placed in shared memory and mapped by every worker without a copy;
+    # any other object is pickled into shared memory once and loaded once by every worker
+    def __init__(self, objects):
+        self.blocks = []
+        self.specs = {}
+        for name, value in objects.items():
+            if isinstance(value, np.ndarray):
+                self.specs[name] = ("array", self._share(value))
+            elif sp.issparse(value):
+                value = value.tocsr()
+                # the workers map the arrays read-only, scipy must find nothing left to sort or sum in place
+                value.sum_duplicates()
+                self.specs[name] = ("csr", value.shape, [self._share(a) for a in (value.data, value.indices, value.indptr)])
+            else:
+                self.specs[name] = ("object", self._share(np.frombuffer(pickle.dumps(value), dtype=np.uint8)))
+
+    def _share(self, array):
+        block = SharedMemory(create=True, size=max(1, array.nbytes))
+        self.blocks.append(block)
+        np.ndarray(array.shape, array.dtype, buffer=block.buf)[...] = array
+        return block.name, array.shape, array.dtype.str
+
+    def close(self):
+        for block in self.blocks:
+            block.close()
+            block.unlink()
+
+
+_worker_blocks = []
+_worker_objects = None
+
+
+def _attach(spec):
+    name, shape, dtype = spec
+    block = SharedMemory(name=name)
+    # the arrays view the blocks, which stay open as long as the worker
+    _worker_blocks.append(block)
+    array = np.ndarray(shape, dtype, buffer=block.buf)
+    array.flags.writeable = False
+    return array
+
+
+def _init_worker(specs, n_threads):
+    global _worker_objects
+    from threadpoolctl import threadpool_limits
+    threadpool_limits(n_threads)
+    if "torch" in sys.modules:
+        sys.modules["torch"].set_num_threads(n_threads)
+    _worker_objects = {}
+    for name, spec in specs.items():
+        if spec[0] == "array":
+            _worker_objects[name] = _attach(spec[1])
+        elif spec[0] == "csr":
+            _worker_objects[name] = sp.csr_matrix(tuple(_attach(a) for a in spec[2]), shape=spec[1], copy=False)
+        else:
+            _worker_objects[name] = pickle.loads(_attach(spec[1]))
+
+
+def _run_task(run_task, task):
+    return run_task(_worker_objects, *task)
+
+
+def run_sweep(tasks, run_task, log_path, config, parameters, objects, n_workers=None):
+    # runs every task not already in the results log and returns how many were run, the records are only written
+    # to the log (read them with experimental_results/results_reader.py).
+    # tasks: (task arguments, the grid points it scores), a grid point is a {parameter: value} dict
+    # run_task(objects, *task arguments): the records of the task's grid points, every record has their parameters
+    # config: JSON-serializable settings the records depend on, a log of other settings is not resumed
+    # parameters: the grid point parameter names
+    # objects: {name: object} read by run_task, shared with the workers; n_workers: one per core by default
+    log = ResultsLog(log_path, config, parameters)
+    pending = [(task, points) for task, points in tasks if not log.done(points)]
+    if len(pending) < len(tasks):
+        print(f"[Sweep] resuming {log_path}, {len(tasks)-len(pending)} of {len(tasks)} tasks already done", flush=True)
+    n_cores = cpu_count() or 1
+    n_workers = min(n_workers or n_cores, len(pending))
+    start = perf_counter()
+    if n_workers <= 1:
+        for i, (task, _) in enumerate(pending):
+            log.append(run_task(objects, *task))
+            print(f"[Sweep] {i+1} of {len(pending)} tasks done", flush=True)
+    else:
+        print(f"[Sweep] running {len(pending)} tasks in {n_workers} processes", flush=True)
+        shared = SharedObjects(objects)
+        error = None
+        try:
+            with ProcessPoolExecutor(n_workers, mp_context=get_context("fork"), initializer=_init_worker,
+                                     initargs=(shared.specs, max(1, n_cores // n_workers))) as pool:
+                futures = [pool.submit(_run_task, run_task, task) for task, _ in pending]
+                # every finished task is logged, even after another one failed
+                for i, future in enumerate(as_completed(futures)):
+                    try:
+                        log.append(future.result())
+                    except Exception as exception:
+                        error = error or exception
+                    print(f"[Sweep] {i+1} of {len(pending)} tasks done", flush=True)
+        finally:
+            shared.close()
+        if error:
+            raise error
+    if pending:
+        print(f"[Sweep] {len(pending)} tasks in {perf_counter()-start:.1f}s", flush=True)
+    return len(pending)
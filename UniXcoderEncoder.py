@@ -0,0 +1,176 @@
+from os import path, makedirs, replace, remove, scandir, utime, getpid
+from hashlib import sha256
+from time import perf_counter
+import numpy as np
+
+
+base_dir = path.dirname(path.realpath(__file__))
+# the embedding cache shared by Mo2oM and Mono2Multi, one .npy file per embedded class source
+embedding_cache_dir = path.join(base_dir, ".embeddings")
+max_embedding_cache_size = 1 << 30
+# fp32: the original model, int8: its linear layers dynamically quantized to int8, on the CPU
+backends = ["fp32", "int8"]
+
+
+def _cache_key(model_name, backend, max_length, source):
+    model_id = model_name if backend == "fp32" else f"{model_name}:{backend}"
+    return sha256(f"{model_id}\0{max_length}\0{source}".encode("utf-8", "surrogatepass")).hexdigest()
+
+
+def load_model(model_name, backend, device):
+    import torch
+    from Mono2Multi.unixcoder import UniXcoder
+
+    model = UniXcoder(model_name)
+    model.eval()
+    if backend == "int8":
+        # only the encoder, the language model head is not used to embed
+        model.model = torch.ao.quantization.quantize_dynamic(model.model, {torch.nn.Linear}, dtype=torch.qint8)
+    return model.to(device)
+
+
+def _load_cached(cache_dir, key):
+    # memory-mapped, the rows are copied straight into the output; a hit refreshes the entry for eviction
+    entry_path = path.join(cache_dir, key+".npy")
+    try:
+        embedding = np.load(entry_path, mmap_mode="r")
+        utime(entry_path)
+        return embedding
+    except (OSError, ValueError):
+        return None
+
+
+def _store_cached(cache_dir, key, embedding):
+    # written to a temporary file first, so concurrent runs never read a partial entry
+    temp_path = path.join(cache_dir, f"{key}.{getpid()}.tmp")
+    with open(temp_path, "wb") as entry_file:
+        np.save(entry_file, embedding)
+    replace(temp_path, path.join(cache_dir, key+".npy"))
+
+
+def _evict(cache_dir, max_size):
+    # removes the least recently used entries until the cache fits in max_size bytes
+    entries = []
+    for entry in scandir(cache_dir):
+        try:
+            if entry.name.endswith(".npy"):
+                stat = entry.stat()
+                entries.append((stat.st_mtime, stat.st_size, entry.path))
+        except FileNotFoundError:
+            pass
+    size = sum(entry_size for _, entry_size, _ in entries)
+    for _, entry_size, entry_path in sorted(entries):
+        if size <= max_size:
+            break
+        try:
+            remove(entry_path)
+        except FileNotFoundError:
+            pass
+        size -= entry_size
+
+
+def encode(sources, model_name="microsoft/unixcoder-base", max_length=512, batch_size=16, n_threads=None,
+           backend="fp32", cache_dir=embedding_cache_dir, max_cache_size=max_embedding_cache_size):
+    # L2-normalized UniXcoder sentence embeddings of the given sources, one row per source in the same order.
+    # the sources are sorted by token count and batched, so every batch is padded only to its longest source;
+    # padding is masked out of the attention and the mean pooling, the embeddings equal the unbatched ones.
+    # embeddings are cached in cache_dir by model, backend, max_length and source, only uncached sources are encoded
+    import torch
+
+    embeddings = None
+    missing = list(range(len(sources)))
+    if cache_dir:
+        makedirs(cache_dir, exist_ok=True)
+        keys = [_cache_key(model_name, backend, max_length, source) for source in sources]
+        missing = []
+        for i, key in enumerate(keys):
+            embedding = _load_cached(cache_dir, key)
+            if embedding is None:
+                missing.append(i)
+                continue
+            if embeddings is None:
+                embeddings = torch.empty((len(sources), embedding.shape[0]))
+            embeddings.numpy()[i] = embedding
+        print(f"[UniXcoder] {len(sources)-len(missing)} of {len(sources)} embeddings cached", flush=True)
+    if not missing:
+        return embeddings if embeddings is not None else torch.empty((0, 0))
+
+    if n_threads:
+        torch.set_num_threads(n_threads)
+    # dynamically quantized layers only run on the CPU
+    device = torch.device("cuda" if torch.cuda.is_available() and backend == "fp32" else "cpu")
+    print(f"[UniXcoder] using {backend} on device {device}, {torch.get_num_threads()} threads, batches of {batch_size}",
+          flush=True)
+    model = load_model(model_name, backend, device)
+
+    tokens_ids = model.tokenize([sources[i] for i in missing], max_length=max_length, mode="<encoder-only>")
+    order = sorted(range(len(tokens_ids)), key=lambda i: len(tokens_ids[i]))
+    pad_token_id = model.config.pad_token_id
+    if embeddings is None:
+        embeddings = torch.empty((len(sources), model.config.hidden_size))
+    embeddings = embeddings.to(device)
+    start = perf_counter()
+    with torch.inference_mode():
+        for batch_start in range(0, len(order), batch_size):
+            batch = order[batch_start:batch_start+batch_size]
+            length = len(tokens_ids[batch[-1]])
+            source_ids = torch.tensor([tokens_ids[i] + [pad_token_id]*(length-len(tokens_ids[i])) for i in batch],
+                                      device=device)
+            embedding = torch.nn.functional.normalize(model(source_ids)[1], p=2, dim=1)
+            rows = [missing[i] for i in batch]
+            embeddings[rows] = embedding
+            if cache_dir:
+                for row, row_embedding in zip(rows, embedding.cpu().numpy()):
+                    _store_cached(cache_dir, keys[row], row_embedding)
+            print(f"\r[UniXcoder] {int(100*(batch_start+len(batch))/len(order))}%", end="", flush=True)
+    elapsed = perf_counter() - start
+    print(f"\r[UniXcoder] 100%, {len(order)} classes in {elapsed:.1f}s ({len(order)/max(elapsed, 1e-9):.1f} classes/s)",
+          flush=True)
+    if cache_dir:
+        _evict(cache_dir, max_cache_size)
+    return embeddings
+
+
+def check_backend(project_directories, backend="int8", batch_size=16, n_threads=None):
+    # compares the cosine similarities between the classes of every project encoded by the backend with fp32
+    from JavaExtractor import get_extractor, cache_dir
+    from tempfile import TemporaryDirectory
+    from json import load
+
+    with TemporaryDirectory() as temp_dir:
+        for project_directory in project_directories:
+            json_path = path.join(temp_dir, "classes.json")
+            get_extractor().parse(project_directory, json_path, cache_dir=cache_dir, max_source_length=10000)
+            with open(json_path, "rt") as classes_file:
+                sources = [clss["source"] for clss in load(classes_file).values()]
+            similarities, elapsed = [], []
+            for encoder_backend in ["fp32", backend]:
+                start = perf_counter()
+                embeddings = encode(sources, batch_size=batch_size, n_threads=n_threads, backend=encoder_backend,
+                                    cache_dir=None).cpu().numpy()
+                elapsed.append(perf_counter() - start)
+                similarities.append(embeddings @ embeddings.T)
+            error = np.abs(similarities[1] - similarities[0])
+            print(f"{project_directory}: {len(sources)} classes, cosine similarity error max {error.max():.4f} "
+                  f"mean {error.mean():.4f}, {elapsed[0]:.1f}s fp32, {elapsed[1]:.1f}s {backend} "
+                  f"({elapsed[0]/elapsed[1]:.1f}x)", flush=True)
+
+
+if __name__ == "__main__":
+    from argparse import ArgumentParser
+    from glob import glob
+
+    parser = ArgumentParser(
+        prog='python UniXcoderEncoder.py',
+        description='Checks the accuracy and speed of a UniXcoder backend against fp32.',
+        epilog='example usage: python UniXcoderEncoder.py --backend int8 test_projects/JPetStore/src')
+    parser.add_argument("projects", nargs="*", default=sorted(glob(path.join(base_dir, "test_projects/*/src"))),
+                        help="java project directories, all test projects by default")
+    parser.add_argument("--backend", dest="backend", choices=backends[1:], default="int8",
+                        help="backend to compare with fp32")
+    parser.add_argument("--batch-size", dest="batch_size", type=int, default=16,
+                        help="number of classes UniXcoder encodes at once")
+    parser.add_argument("--threads", dest="n_threads", type=int,
+                        help="number of threads UniXcoder uses on the CPU, all cores by default")
+    args = parser.parse_args()
+    check_backend(args.projects, args.backend, args.batch_size, args.n_threads)
@@ -9,7 +9,7 @@ src = "Mo2oM"
 projects = ["JPetStore", "DayTrader", "AcmeAir", "Plants"]
 measures = {"SM": SM, "ICP": ICP, "IFN": IFN, "NED": NED}
 base_dir = os.path.dirname(os.path.realpath(__file__))
-libs = os.path.join(base_dir, "Mo2oM/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+os.pathsep+os.path.join(base_dir, "Mono2Multi/JavaParser/lib/json-20230618.jar")
+extractor_jar = os.path.join(base_dir, "JavaParser/build/libs/extractor.jar")
 
 for project in projects:
 	print("project:", project)
@@ -17,7 +17,7 @@ for project in projects:
 	shutil.rmtree(".data/", ignore_errors=True)
 	os.makedirs(os.path.join(base_dir, f".data/{project}"), exist_ok=True)
 	json_path = os.path.join(base_dir, f".data/{project}/classes.json")
-	subprocess.run(['java', '-cp', libs, os.path.join(base_dir, 'Mo2oM/JavaParser/Parser.java'), f"test_projects/{project}/OneFileSource.java", json_path]) 
+	subprocess.run(['java', '-jar', extractor_jar, 'parse', f"test_projects/{project}/OneFileSource.java", json_path])
 	with open(json_path, "rt") as classes_file:
 		classes_info = json.load(classes_file)
 	print("done!")
@@ -1,5 +1,4 @@
 from subprocess import run
-from os import pathsep
 import networkx as nx
 import itertools
 import json
@@ -51,9 +50,9 @@ ALL_MICROSERVICES = [  # you can get these from ../top_microservices/
 KEEPS = []
 
 
-libs = "../../Mo2oM/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar"+pathsep+"../../Mo2oM/JavaParser/lib/json-20230618.jar"
-json_path = "../../Mo2oM/JavaParser/classes.json"
-run(['java', '-cp', libs, "../../Mo2oM/JavaParser/Parser.java", f"../../test_projects/{PROJECT}/OneFileSource.java", json_path])
+# the extractor jar is built with: gradle -p JavaParser jar
+json_path = "../../Mo2oM/classes.json"
+run(['java', '-jar', "../../JavaParser/build/libs/extractor.jar", 'parse', f"../../test_projects/{PROJECT}/OneFileSource.java", json_path])
 with open(json_path, "rt") as classes_file:
 	classes_info = json.load(classes_file)
 
@@ -7,7 +7,6 @@ import matplotlib.patches as mpatches
 import matplotlib.lines as mlines
 import matplotlib.pyplot as plt
 from subprocess import run
-from os import pathsep
 import seaborn as sns
 import networkx as nx
 import json
@@ -30,9 +29,9 @@ nodes_labels = []
 for ms in MICROSERVICES:
     nodes_labels.extend(ms)
 
-libs = "../../Mo2oM/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar"+pathsep+"../../Mo2oM/JavaParser/lib/json-20230618.jar"
-json_path = "../../Mo2oM/JavaParser/classes.json"
-run(['java', '-cp', libs, "../../Mo2oM/JavaParser/Parser.java", f"../../test_projects/{PROJECT}/OneFileSource.java", json_path])
+# the extractor jar is built with: gradle -p JavaParser jar
+json_path = "../../Mo2oM/classes.json"
+run(['java', '-jar', "../../JavaParser/build/libs/extractor.jar", 'parse', f"../../test_projects/{PROJECT}/OneFileSource.java", json_path])
 with open(json_path, "rt") as classes_file:
     classes_info = json.load(classes_file)
 immutables = []
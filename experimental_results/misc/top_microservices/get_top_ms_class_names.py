@@ -1,5 +1,4 @@
 from argparse import ArgumentParser
-from os import pathsep
 from subprocess import run
 from json import load
 import pandas as pd
@@ -17,9 +16,8 @@ df = pd.DataFrame(data)
 df["overall"] = 0.75 + 0.25 * df["SM"] - 0.25 * df["ICP"] - 0.25 * df["NED"] - 0.25 * df["IFN"]
 df.sort_values(by="overall", ascending=False, inplace=True)
 
-libs = f"{args.method}/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar"+pathsep+f"{args.method}/JavaParser/lib/json-20230618.jar"
-json_path = f"{args.method}/JavaParser/classes.json"
-run(['java', '-cp', libs, f'{args.method}/JavaParser/Parser.java', args.file_path, json_path]) 
+json_path = f"{args.method}/classes.json"
+run(['java', '-jar', 'JavaParser/build/libs/extractor.jar', 'parse', args.file_path, json_path])
 with open(json_path, "rt") as classes_file:
 	classes_info = load(classes_file)
 class_names = list(classes_info)
@@ -44,12 +44,10 @@ def count_calls(project: str, microservices: list[list[str]]):
 	nodes_labels = []
 	for ms in microservices:
 		nodes_labels.extend(ms)
-	libs = os.path.join("..", "..", "Mo2oM", "JavaParser", "lib", "javaparser-core-3.25.5-SNAPSHOT.jar") + os.pathsep + \
-		   os.path.join("..", "..", "Mo2oM", "JavaParser", "lib", "json-20230618.jar")
-	json_path = os.path.join("..", "..", "Mo2oM", "JavaParser", "classes.json")
+	json_path = os.path.join("..", "..", "Mo2oM", "classes.json")
 	source_path = os.path.join("..", "..", "test_projects", project, "OneFileSource.java")
-	parser_path = os.path.join("..", "..", "Mo2oM", "JavaParser", "Parser.java")
-	subprocess.run(['java', '-cp', libs, parser_path, source_path, json_path])
+	extractor_jar = os.path.join("..", "..", "JavaParser", "build", "libs", "extractor.jar")
+	subprocess.run(['java', '-jar', extractor_jar, 'parse', source_path, json_path])
 	with open(json_path, "rt") as classes_file:
 		classes_info = json.load(classes_file)
 	immutables = []
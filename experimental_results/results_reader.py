@@ -0,0 +1,19 @@
+from json import loads
+
+
+def load_results(results_path):
+    # the records of a results file, either a JSON array or the JSON lines written by the _expt scripts.
+    # the first line of those holds the sweep settings and is left out, and so is the partial last line of a
+    # sweep still running or interrupted while writing
+    with open(results_path, "rt", encoding="utf-8") as results_file:
+        content = results_file.read()
+    if content.lstrip().startswith("["):
+        return loads(content)
+    lines = content.split("\n")[:-1]
+    return [loads(line) for line in lines[1:]]
+
+
+def load_config(results_path):
+    # the sweep settings of a JSON lines results file
+    with open(results_path, "rt", encoding="utf-8") as results_file:
+        return loads(results_file.readline())["config"]
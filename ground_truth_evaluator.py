@@ -1,6 +1,6 @@
 from EvaluationMeasures import *
+from JavaExtractor import get_extractor, cache_dir
 from argparse import ArgumentParser
-import subprocess
 import shutil
 import json
 import os
@@ -21,19 +21,6 @@ args = parser.parse_args()
 measures = {"SM": SM, "ICP": ICP, "IFN": IFN, "NED": NED}
 base_dir = os.path.dirname(os.path.realpath(__file__))
 
-def merge_java_files(src_dir, dest_file):
-    with open(dest_file, 'w') as outfile:
-        for root, dirs, files in os.walk(src_dir):
-            for filename in files:
-                if filename.endswith('.java'):
-                    filepath = os.path.join(root, filename)
-                    with open(filepath) as infile:
-                        lines = infile.readlines()
-                        for line in lines:
-                            if not line.startswith('package'):
-                                outfile.write(line)
-                    outfile.write('\n')
-
 if args.project_directory.endswith("/"):
     args.project_directory = args.project_directory[:-1]
 project_dir_name = args.project_directory.split('/')[-1]
@@ -47,46 +34,23 @@ if os.path.isdir(".data/"):
         exit()
     shutil.rmtree(".data/", ignore_errors=True)
 
-print("analyzing microservices... 0%", end="", flush=True)
-true_ms_classnames = []
-libs = os.path.join(base_dir, "Mo2oM/JavaParser/lib/javaparser-core-3.25.5-SNAPSHOT.jar")+os.pathsep+os.path.join(base_dir, "Mono2Multi/JavaParser/lib/json-20230618.jar")
+print("analyzing microservices...", end=" ", flush=True)
 os.makedirs(os.path.join(base_dir, f".data/{project_dir_name}"), exist_ok=True)
-for i, directory in enumerate(true_ms_dirs):
-    if directory.endswith("/"):
-        directory = directory[:-1]
-    json_path = os.path.join(base_dir, f".data/{project_dir_name}/{directory}.json")
-    subprocess.run(['java', '-cp', libs, os.path.join(base_dir, 'Mo2oM/JavaParser/ClassScanner.java'), os.path.join(args.project_directory, directory), json_path])
-    with open(json_path, "rt") as classes_file:
-        true_ms_classnames.append(json.load(classes_file)["classes"])
-    print(f"\ranalyzing microservices... {int(100*(i+1)/len(true_ms_dirs))}%", end="", flush=True)
-print(f"\ranalyzing microservices... 100%", flush=True)
+ms_classnames = get_extractor().scan_roots(args.project_directory)
+true_ms_classnames = [ms_classnames[directory] for directory in true_ms_dirs]
+print("done!")
 
 # debug
 # print(*true_ms_classnames, sep="\n")
 # debug
 
-print("merging source files...", end=" ", flush=True)
-file_path = os.path.join(base_dir, f".data/{project_dir_name}/OneFileSource.java")
-merge_java_files(args.project_directory, file_path)
-print("done!")
-
 print("parsing the code...", end=" ", flush=True)
 json_path = os.path.join(base_dir, f".data/{project_dir_name}/classes.json")
-subprocess.run(['java', '-cp', libs, os.path.join(base_dir, 'Mo2oM/JavaParser/Parser.java'), f".data/{project_dir_name}/OneFileSource.java", json_path])
+get_extractor().parse(args.project_directory, json_path, cache_dir=cache_dir)
 with open(json_path, "rt") as classes_file:
     classes_info = json.load(classes_file)
 print("done!")
 
-print("analyzing method calls...", end=" ", flush=True)
-for clss in classes_info:
-    for call in classes_info[clss]["method_calls"]:
-        for other_clss in classes_info:
-            if call["method_name"] in classes_info[other_clss]["methods"]:
-                call["class_name"] = other_clss
-                if clss == other_clss:
-                    break
-print("done!")
-
 class_names = list(classes_info)
 print("class_names:", class_names)
 true_microservices = [{-1} for _ in classes_info]
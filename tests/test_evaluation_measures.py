@@ -0,0 +1,140 @@
+import random
+import unittest
+from math import log
+import EvaluationMeasures
+from EvaluationMeasures import ICP, IFN, SM
+
+
+# the loop implementations the sparse measures replaced, SM with the lowest callee microservice instead of a random
+# one, which is the same for a hard clustering
+def loop_SM(microservices, classes_info):
+    K = max(max(m) for m in microservices) + 1
+    m = [0] * K
+    mu = [0] * K
+    sigma = [[0]*K for _ in range(K)]
+    for class_index, class_name in enumerate(classes_info):
+        class_microservices = microservices[class_index]
+        if -1 in class_microservices:
+            continue
+        for microservice_i in class_microservices:
+            m[microservice_i] += 1
+        for call in classes_info[class_name]["method_calls"]:
+            class_j = call["class_name"]
+            if class_j in classes_info:
+                j = list(classes_info).index(class_j)
+                if class_index == j:
+                    continue
+                if -1 in microservices[j]:
+                    continue
+                for ms in set(class_microservices) - set(microservices[j]):
+                    sigma[ms][min(microservices[j])] += 1
+                for ms in set(class_microservices).intersection(set(microservices[j])):
+                    mu[ms] += 1
+
+    SM1, SM2 = 0, 0
+    for i in range(K):
+        try:
+            SM1 += mu[i] / (m[i] ** 2)
+        except ZeroDivisionError:
+            pass
+        for j in range(K):
+            if i != j:
+                try:
+                    SM2 += (sigma[i][j]+sigma[j][i]) / (2 * m[i] * m[j])
+                except ZeroDivisionError:
+                    pass
+    SM1 = 0 if K == 0 else SM1 / K
+    SM2 = 0 if K*(K-1)/2 == 0 else SM2 / (K*(K-1)/2)
+    return SM1 - SM2
+
+
+def loop_IFN(microservices, classes_info):
+    num_microservices = max(max(ms) for ms in microservices) + 1
+    interfaces_per_microservice = [set() for _ in range(num_microservices)]
+    for class_index, class_name in enumerate(classes_info):
+        class_microservices = microservices[class_index]
+        for call in classes_info[class_name]["method_calls"]:
+            if call['class_name'] in classes_info:
+                call_class_index = list(classes_info).index(call["class_name"])
+                call_microservices = microservices[call_class_index]
+                for call_microservice in call_microservices:
+                    if call_microservice in class_microservices:
+                        break
+                else:
+                    interfaces_per_microservice[call_microservice].add(call['class_name'])
+    return sum(len(interfaces) for interfaces in interfaces_per_microservice) / num_microservices
+
+
+def loop_ICP(microservices, classes_info):
+    def log_calls(class_i, class_j):
+        calls = len([1 for call in classes_info[class_i]["method_calls"] if call["class_name"] == class_j])
+        return log(calls)+1 if calls else 0
+
+    class_names = list(classes_info)
+    numerator, denominator = 0, 0
+    n_microservices = max(max(m) for m in microservices) + 1
+    for microservice_i in range(n_microservices):
+        classes_i = {class_names[c] for c, ms in enumerate(microservices) if microservice_i in ms}
+        for microservice_j in range(n_microservices):
+            classes_j = {class_names[c] for c, ms in enumerate(microservices) if microservice_j in ms}
+            if microservice_i != microservice_j:
+                numerator += sum(log_calls(class_i, class_j) for class_i in classes_i - classes_j
+                                 for class_j in classes_j - classes_i)
+            denominator += sum(log_calls(class_i, class_j) for class_i in classes_i for class_j in classes_j)
+    if numerator == 0:
+        return 0
+    return numerator/denominator
+
+
+def random_classes_info(rng, n_classes, n_calls):
+    # calls between random classes, self-calls, repeated calls and calls to classes outside the project included
+    class_names = [f"C{i}" for i in range(n_classes)]
+    classes_info = {name: {"method_calls": []} for name in class_names}
+    for _ in range(n_calls):
+        callee = rng.choice(class_names + ["java.util.List"])
+        classes_info[rng.choice(class_names)]["method_calls"].append({"class_name": callee})
+    for name in class_names[:3]:
+        classes_info[name]["method_calls"].append({"class_name": name})
+    return classes_info
+
+
+class EvaluationMeasuresTest(unittest.TestCase):
+    def setUp(self):
+        EvaluationMeasures._call_matrices_cache = None
+
+    def assert_matches_loops(self, microservices, classes_info, measures):
+        for measure, loop_measure in measures:
+            with self.subTest(measure=measure.__name__, microservices=microservices):
+                self.assertAlmostEqual(measure(microservices, classes_info), loop_measure(microservices, classes_info),
+                                       places=10)
+
+    def test_hard_clusterings(self):
+        rng = random.Random(42)
+        for n_classes, n_microservices in [(6, 2), (20, 4), (40, 7)]:
+            classes_info = random_classes_info(rng, n_classes, 4*n_classes)
+            for _ in range(10):
+                # -1 marks classes in no microservice
+                microservices = [{rng.randrange(-1, n_microservices)} for _ in range(n_classes)]
+                microservices[0] = {n_microservices-1}
+                self.assert_matches_loops(microservices, classes_info, [(SM, loop_SM), (IFN, loop_IFN), (ICP, loop_ICP)])
+
+    def test_overlapping_clusterings(self):
+        rng = random.Random(7)
+        for n_classes, n_microservices in [(10, 3), (30, 5)]:
+            classes_info = random_classes_info(rng, n_classes, 4*n_classes)
+            for _ in range(10):
+                microservices = [set(rng.sample(range(n_microservices), rng.randint(1, 3))) or {-1}
+                                 for _ in range(n_classes)]
+                microservices[1] = {-1}
+                microservices[0] = {n_microservices-1}
+                self.assert_matches_loops(microservices, classes_info, [(SM, loop_SM), (IFN, loop_IFN), (ICP, loop_ICP)])
+
+    def test_self_calls_only(self):
+        classes_info = {"A": {"method_calls": [{"class_name": "A"}, {"class_name": "A"}]},
+                        "B": {"method_calls": [{"class_name": "B"}]}}
+        microservices = [{0}, {1}]
+        self.assert_matches_loops(microservices, classes_info, [(SM, loop_SM), (IFN, loop_IFN), (ICP, loop_ICP)])
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -0,0 +1,40 @@
+import unittest
+import numpy as np
+import scipy.sparse as sp
+import torch
+from Mo2oM.nocd.nn.imrpoved_gcn import ImprovedGCN
+from Mo2oM.nocd.utils import to_sparse_tensor
+
+
+class NormalizeAdjMatrixTest(unittest.TestCase):
+    # an upper-triangular adjacency like the one Mo2oM builds: 0-1 and 1-2 stored in one direction only,
+    # a self-loop on 2 and the isolated node 3
+    A = np.array([[0, 1, 0, 0],
+                  [0, 0, 1, 0],
+                  [0, 0, 1, 0],
+                  [0, 0, 0, 0]], dtype=float)
+    # the symmetric normalization of the symmetrized A without self-loops, degrees 1, 2, 1 and 0
+    expected = np.array([[0, 1/np.sqrt(2), 0, 0],
+                         [1/np.sqrt(2), 0, 1/np.sqrt(2), 0],
+                         [0, 1/np.sqrt(2), 0, 0],
+                         [0, 0, 0, 0]])
+
+    def test_scipy_isolated_node(self):
+        adj_norm = ImprovedGCN.normalize_adj_matrix(sp.csr_matrix(self.A)).toarray()
+        self.assertTrue(np.isfinite(adj_norm).all())
+        np.testing.assert_allclose(adj_norm, self.expected)
+
+    def test_torch_isolated_node(self):
+        adj_norm = ImprovedGCN.normalize_adj_matrix(torch.tensor(self.A)).numpy()
+        self.assertTrue(np.isfinite(adj_norm).all())
+        np.testing.assert_allclose(adj_norm, self.expected)
+
+    def test_forward_isolated_node(self):
+        torch.manual_seed(0)
+        model = ImprovedGCN(4, [8], 2, dropout=0)
+        adj_norm = to_sparse_tensor(ImprovedGCN.normalize_adj_matrix(sp.csr_matrix(self.A)), cuda=False)
+        self.assertTrue(torch.isfinite(model(torch.eye(4), adj_norm)).all())
+
+
+if __name__ == "__main__":
+    unittest.main()